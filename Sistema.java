@@ -2,9 +2,39 @@
 // Prof. Fernando Dotti
 // Código fornecido como parte da solução do projeto de Sistemas Operacionais
 
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.Semaphore;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntToLongFunction;
+import java.util.function.Supplier;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
 
 public class Sistema {
 
@@ -13,640 +43,2745 @@ public class Sistema {
         NEW, READY, RUNNING, BLOCKED, TERMINATED
     }
 
-    // ------------------- PAGE TABLE ENTRY -------------------
-    public static class PageTableEntry {
-        public int frameNumber;   // Frame físico, se válido
-        public boolean validBit;  // Se a página está na memória principal
-        public boolean dirtyBit;  // Se a página foi modificada
-        public int diskAddress;   // Endereço no disco (swap)
+    // ------------------- TABELA DE PÁGINAS EMPACOTADA -------------------
+    // Cada entrada é um long:
+    //   bit 0      V  - página válida (na memória principal)
+    //   bit 1      D  - página modificada (dirty)
+    //   bit 2      R  - página referenciada desde a última limpeza do bit
+    //   bit 3      RO - página somente leitura (escrita gera intEnderecoInvalido)
+    //   bit 4      S  - o endereço no disco é um slot de swap (senão, posição na imagem;
+    //                   sem endereço no disco, a página é demand-zero)
+    //   bit 5      H  - huge page: a entrada (cabeça de um grupo alinhado de PAGINAS_POR_HUGE
+    //                   páginas) mapeia o grupo inteiro em frames contíguos a partir do seu frame
+    //   bit 6      C  - página de um segmento de memória compartilhada (frame fixo, não é despejado)
+    //   bits 8-31  frame físico (0xFFFFFF = nenhum)
+    //   bits 32-63 endereço no disco / slot de swap (-1 = nenhum)
+    // As alterações usam compareAndSet, de modo que CPU e threads de dispositivo podem
+    // ligar/desligar bits da mesma entrada sem locks.
+    //
+    // A tabela tem dois níveis: um diretório de tabelas de ENTRADAS_POR_TABELA entradas,
+    // alocadas sob demanda na primeira escrita. Um espaço de endereçamento grande e
+    // esparso paga apenas pelas regiões usadas, e a tradução custa sempre dois acessos.
+    public static class TabelaPaginas {
+        public static final long BIT_VALIDO = 1L;
+        public static final long BIT_SUJO = 1L << 1;
+        public static final long BIT_REFERENCIADO = 1L << 2;
+        public static final long BIT_SOMENTE_LEITURA = 1L << 3;
+        public static final long BIT_SWAP = 1L << 4;
+        public static final long BIT_HUGE = 1L << 5;
+        public static final long BIT_COMPARTILHADA = 1L << 6;
 
-        public PageTableEntry() {
-            this.frameNumber = -1;
-            this.validBit = false;
-            this.dirtyBit = false;
-            this.diskAddress = -1;
-        }
-    }
+        public static final int BITS_HUGE = 3;
+        public static final int PAGINAS_POR_HUGE = 1 << BITS_HUGE; // Sempre dentro de uma tabela de 2º nível
 
-    // ------------------- PROCESS CONTROL BLOCK (PCB) -------------------
-    public class PCB {
-        public int id;
-        public int pc;
-        public int[] reg;
-        public PageTableEntry[] tabelaPaginas;  // Alterado para PageTableEntry[]
-        public ProcessState estado;
-        public String programName;
-        public Word[] imagem;  // Para armazenar a imagem do programa para lazy loading
-
-        private static int nextId = 0;
-
-        public PCB(int numPaginas, String _programName, Word[] _imagem) {
-            this.id = nextId++;
-            this.tabelaPaginas = new PageTableEntry[numPaginas];
-            for (int i = 0; i < numPaginas; i++) {
-                this.tabelaPaginas[i] = new PageTableEntry();
-            }
-            this.programName = _programName;
-            this.imagem = _imagem;
-            this.pc = 0; // Ponto de entrada LÓGICO é sempre 0
-            this.reg = new int[10]; // Registradores zerados
-            Arrays.fill(this.reg, 0);
-            this.estado = ProcessState.NEW;
-        }
-    }
+        private static final int DESLOC_FRAME = 8;
+        private static final long MASCARA_FRAME = 0xFFFFFFL;
+        private static final int DESLOC_DISCO = 32;
+        private static final long ENTRADA_VAZIA = (MASCARA_FRAME << DESLOC_FRAME) | (0xFFFFFFFFL << DESLOC_DISCO);
 
-    // ------------------- CLASSE IORequest -------------------
-    public class IORequest {
-        public PCB pcb;
-        public int endLogico;
-        public int tipo;
+        public static final int BITS_POR_TABELA = 6;
+        public static final int ENTRADAS_POR_TABELA = 1 << BITS_POR_TABELA;
+        private static final int MASCARA_TABELA = ENTRADAS_POR_TABELA - 1;
 
-        public IORequest(PCB _pcb, int _endLogico, int _tipo) {
-            this.pcb = _pcb;
-            this.endLogico = _endLogico;
-            this.tipo = _tipo;
-        }
-    }
+        private static final VarHandle ENTRADAS = MethodHandles.arrayElementVarHandle(long[].class);
 
-    // ------------------- CLASSE IORequestVM -------------------
-    public class IORequestVM {
-        public PCB pcb;
-        public int frameNumber;
-        public int pageNumber;
-        public int diskAddress;
-        public int tipoOperacao; // 0: LOAD_PAGE, 1: SAVE_PAGE
+        private volatile int numPaginas;       // Limite do espaço de endereçamento (em páginas)
+        private volatile long[][] diretorio;   // Cresce conforme as regiões tocadas
+        private volatile boolean hugeTotal;    // Todo o espaço usa huge pages quando possível
+        private final BitSet gruposHuge = new BitSet(); // Grupos marcados individualmente (por região)
 
-        public IORequestVM(PCB _pcb, int _frameNumber, int _pageNumber, int _diskAddress, int _tipoOperacao) {
-            this.pcb = _pcb;
-            this.frameNumber = _frameNumber;
-            this.pageNumber = _pageNumber;
-            this.diskAddress = _diskAddress;
-            this.tipoOperacao = _tipoOperacao;
+        public TabelaPaginas(int _numPaginas) {
+            this.numPaginas = _numPaginas;
+            this.diretorio = new long[1][];
         }
-    }
 
-    // ------------------- CLASSE PageFaultPendente -------------------
-    public class PageFaultPendente {
-        public PCB pcb;
-        public int pageNumber;
-        public int logicalAddress;
-
-        public PageFaultPendente(PCB _pcb, int _pageNumber, int _logicalAddress) {
-            this.pcb = _pcb;
-            this.pageNumber = _pageNumber;
-            this.logicalAddress = _logicalAddress;
+        public int tamanho() {
+            return numPaginas;
         }
-    }
-
-    // ------------------- GERENTE DE PROCESSOS -------------------
-    public class GerenteProcessos {
-        public LinkedList<PCB> prontos;
-        public LinkedList<PCB> bloqueados;
-        public PCB rodando;
-        private GerenteMemoria gm;
-        private HW hw;
-        private int tamPg;
-        private Utilities utils;
-        private SO so;
 
-        public GerenteProcessos(HW _hw, GerenteMemoria _gm, int _tamPg, Utilities _utils, SO _so) {
-            this.hw = _hw;
-            this.gm = _gm;
-            this.tamPg = _tamPg;
-            this.utils = _utils;
-            this.so = _so;
-            this.prontos = new LinkedList<>();
-            this.bloqueados = new LinkedList<>();
-            this.rodando = null;
+        // Altera o limite do espaço de endereçamento (sbrk). Entradas além do novo limite
+        // devem ser limpas pelo chamador.
+        public void redimensiona(int _numPaginas) {
+            this.numPaginas = _numPaginas;
         }
 
-        public boolean criaProcesso(Program p) {
-            if (p == null || p.image == null) {
-                System.out.println("GP: Erro: Programa nulo.");
-                return false;
-            }
-            int nroPalavras = p.image.length;
-            int numPaginas = (int) Math.ceil((double) nroPalavras / tamPg);
-            
-            // Aloca a tabela de páginas (com numPaginas entradas)
-            PCB pcb = new PCB(numPaginas, p.name, p.image);
-            
-            // LAZY LOADING: Aloca e carrega apenas a página 0
-            int frame = gm.alocaFrame();
-            if (frame == -1) {
-                System.out.println("GP: Erro: Memória insuficiente para a página 0 do programa " + p.name);
-                return false;
-            }
-            
-            // Inicializa a página 0 como válida
-            pcb.tabelaPaginas[0].frameNumber = frame;
-            pcb.tabelaPaginas[0].validBit = true;
-            pcb.tabelaPaginas[0].dirtyBit = false;
-            pcb.tabelaPaginas[0].diskAddress = 0; // Disco começa no endereço 0
-
-            // Carrega a página 0 na memória
-            carregarPagina(p.image, pcb, 0);
-            
-            // As outras páginas são marcadas como inválidas e seus diskAddresses são calculados
-            for (int i = 1; i < numPaginas; i++) {
-                pcb.tabelaPaginas[i].diskAddress = i * tamPg; // Cada página tem tamPg palavras
+        public long get(int pagina) {
+            long[][] dir = diretorio;
+            int d = pagina >>> BITS_POR_TABELA;
+            if (d >= dir.length) {
+                return ENTRADA_VAZIA;
             }
-
-            pcb.estado = ProcessState.READY;
-            prontos.add(pcb);
-            System.out.println("GP: Processo " + pcb.id + " (" + pcb.programName + ") criado com " + numPaginas + " páginas (lazy loading).");
-            
-            // Se for o primeiro processo, libera o escalonador
-            if (rodando == null && prontos.size() == 1) {
-                so.semaEscalonador.release();
+            long[] tabela = dir[d];
+            if (tabela == null) {
+                return ENTRADA_VAZIA;
             }
-            return true;
+            return (long) ENTRADAS.getAcquire(tabela, pagina & MASCARA_TABELA);
         }
 
-        private void carregarPagina(Word[] programa, PCB pcb, int pagina) {
-            int frame = pcb.tabelaPaginas[pagina].frameNumber;
-            int endFisicoBase = frame * tamPg;
-            int endLogicoBase = pagina * tamPg;
-
-            for (int offset = 0; offset < tamPg; offset++) {
-                int endLogico = endLogicoBase + offset;
-                int endFisico = endFisicoBase + offset;
-
-                if (endLogico < programa.length) {
-                    hw.mem.pos[endFisico] = new Word(programa[endLogico].opc, programa[endLogico].ra, programa[endLogico].rb, programa[endLogico].p);
-                } else {
-                    // Preenche com zeros se a página não estiver completamente preenchida
-                    hw.mem.pos[endFisico] = new Word(Opcode.___, -1, -1, 0);
+        // Tabela de segundo nível que contém a página, alocando-a se necessário
+        private long[] tabelaDe(int pagina) {
+            int d = pagina >>> BITS_POR_TABELA;
+            long[][] dir = diretorio;
+            if (d < dir.length && dir[d] != null) {
+                return dir[d];
+            }
+            synchronized (this) {
+                dir = diretorio;
+                if (d >= dir.length) {
+                    dir = Arrays.copyOf(dir, Math.max(dir.length * 2, d + 1));
                 }
+                if (dir[d] == null) {
+                    long[] nova = new long[ENTRADAS_POR_TABELA];
+                    Arrays.fill(nova, ENTRADA_VAZIA);
+                    dir[d] = nova;
+                }
+                diretorio = dir; // Publica (volatile) após preencher
+                return dir[d];
             }
-            System.out.println("GP: Página " + pagina + " do processo " + pcb.id + " carregada no frame " + frame);
         }
 
-        public void desalocaProcesso(int id) {
-            PCB pcb = null;
+        private boolean cas(int pagina, long esperado, long novo) {
+            return ENTRADAS.compareAndSet(tabelaDe(pagina), pagina & MASCARA_TABELA, esperado, novo);
+        }
 
-            if (rodando != null && rodando.id == id) {
-                pcb = rodando;
-                rodando = null;
-                System.out.println("GP: Desalocando processo rodando " + id);
-            } 
-            else {
-                Iterator<PCB> iterator = prontos.iterator();
-                while (iterator.hasNext()) {
-                    PCB p = iterator.next();
-                    if (p.id == id) {
-                        pcb = p;
-                        iterator.remove();
-                        System.out.println("GP: Desalocando processo da fila " + id);
-                        break;
-                    }
+        // Próxima página >= 'pagina' com entrada não vazia, ou -1. Percorre apenas as
+        // tabelas de segundo nível alocadas.
+        public int proximaPagina(int pagina) {
+            long[][] dir = diretorio;
+            for (int d = pagina >>> BITS_POR_TABELA; d < dir.length; d++) {
+                long[] tabela = dir[d];
+                if (tabela == null) {
+                    continue;
                 }
-                
-                if (pcb == null) {
-                    iterator = bloqueados.iterator();
-                    while (iterator.hasNext()) {
-                        PCB p = iterator.next();
-                        if (p.id == id) {
-                            pcb = p;
-                            iterator.remove();
-                            System.out.println("GP: Desalocando processo bloqueado " + id);
-                            break;
-                        }
+                int inicio = (d == (pagina >>> BITS_POR_TABELA)) ? (pagina & MASCARA_TABELA) : 0;
+                for (int i = inicio; i < ENTRADAS_POR_TABELA; i++) {
+                    if ((long) ENTRADAS.getAcquire(tabela, i) != ENTRADA_VAZIA) {
+                        return (d << BITS_POR_TABELA) | i;
                     }
                 }
             }
-            
-            if (pcb == null) {
-                System.out.println("GP: Processo " + id + " não encontrado.");
-                return;
-            }
-            
-            // Desaloca todas as páginas do processo
-            for (PageTableEntry entry : pcb.tabelaPaginas) {
-                if (entry.validBit) {
-                    gm.liberaFrame(entry.frameNumber);
+            return -1;
+        }
+
+        // Quantidade de tabelas de segundo nível alocadas (custo de memória da tabela)
+        public int tabelasAlocadas() {
+            int n = 0;
+            for (long[] tabela : diretorio) {
+                if (tabela != null) {
+                    n++;
                 }
             }
-            
-            pcb.estado = ProcessState.TERMINATED;
-            System.out.println("GP: Processo " + id + " desalocado.");
+            return n;
         }
 
-        public PCB findAndRemoveFromBlocked(int pid) {
-            Iterator<PCB> iterator = bloqueados.iterator();
-            while (iterator.hasNext()) {
-                PCB p = iterator.next();
-                if (p.id == pid) {
-                    iterator.remove();
-                    return p;
+        // ---- Decodificação de uma entrada ----
+        public static boolean valida(long e) {
+            return (e & BIT_VALIDO) != 0;
+        }
+
+        public static boolean suja(long e) {
+            return (e & BIT_SUJO) != 0;
+        }
+
+        public static boolean referenciada(long e) {
+            return (e & BIT_REFERENCIADO) != 0;
+        }
+
+        public static boolean somenteLeitura(long e) {
+            return (e & BIT_SOMENTE_LEITURA) != 0;
+        }
+
+        public static boolean emSwap(long e) {
+            return (e & BIT_SWAP) != 0;
+        }
+
+        public static boolean huge(long e) {
+            return (e & BIT_HUGE) != 0;
+        }
+
+        public static boolean compartilhada(long e) {
+            return (e & BIT_COMPARTILHADA) != 0;
+        }
+
+        public static int cabecaHuge(int pagina) {
+            return pagina & ~(PAGINAS_POR_HUGE - 1);
+        }
+
+        // Página sem conteúdo no disco: é preenchida com zeros no primeiro acesso
+        public static boolean demandZero(long e) {
+            return (e & BIT_SWAP) == 0 && enderecoDisco(e) == -1;
+        }
+
+        public static int frame(long e) {
+            int f = (int) ((e >>> DESLOC_FRAME) & MASCARA_FRAME);
+            return f == MASCARA_FRAME ? -1 : f;
+        }
+
+        public static int enderecoDisco(long e) {
+            return (int) (e >>> DESLOC_DISCO);
+        }
+
+        // ---- Atualizações atômicas ----
+        public void ligaBits(int pagina, long bits) {
+            long atual;
+            do {
+                atual = get(pagina);
+                if ((atual & bits) == bits) {
+                    return;
+                }
+            } while (!cas(pagina, atual, atual | bits));
+        }
+
+        public void desligaBits(int pagina, long bits) {
+            long atual;
+            do {
+                atual = get(pagina);
+                if ((atual & bits) == 0) {
+                    return;
                 }
+            } while (!cas(pagina, atual, atual & ~bits));
+        }
+
+        // Associa um frame à página sem validá-la (carga ainda em andamento)
+        public void setFrame(int pagina, int frame) {
+            long campo = ((long) frame & MASCARA_FRAME) << DESLOC_FRAME;
+            long atual;
+            do {
+                atual = get(pagina);
+            } while (!cas(pagina, atual, (atual & ~(MASCARA_FRAME << DESLOC_FRAME)) | campo));
+        }
+
+        // Página carregada no frame: válida, limpa e ainda não referenciada
+        public void mapeia(int pagina, int frame) {
+            long campo = ((long) frame & MASCARA_FRAME) << DESLOC_FRAME;
+            long limpa = ~((MASCARA_FRAME << DESLOC_FRAME) | BIT_SUJO | BIT_REFERENCIADO);
+            long atual;
+            do {
+                atual = get(pagina);
+            } while (!cas(pagina, atual, (atual & limpa) | campo | BIT_VALIDO));
+        }
+
+        // Grupo carregado em frames contíguos a partir de frameBase: a cabeça vira huge page
+        public void mapeiaHuge(int cabeca, int frameBase) {
+            long campo = ((long) frameBase & MASCARA_FRAME) << DESLOC_FRAME;
+            long limpa = ~((MASCARA_FRAME << DESLOC_FRAME) | BIT_SUJO | BIT_REFERENCIADO);
+            long atual;
+            do {
+                atual = get(cabeca);
+            } while (!cas(cabeca, atual, (atual & limpa) | campo | BIT_VALIDO | BIT_HUGE));
+        }
+
+        // Entrada que mapeia a página: a própria, ou a cabeça da huge page que a contém; -1 se nenhuma
+        public int resolve(int pagina) {
+            if (valida(get(pagina))) {
+                return pagina;
             }
-            return null;
+            int cabeca = cabecaHuge(pagina);
+            long e = get(cabeca);
+            return (cabeca != pagina && valida(e) && huge(e)) ? cabeca : -1;
         }
 
-        public void ps() {
-            System.out.println("=== LISTA DE PROCESSOS ===");
-            System.out.println("ID\tEstado\t\tPrograma");
-            if (rodando != null) {
-                System.out.println(rodando.id + "\tRUNNING\t\t" + rodando.programName);
+        // Divide a huge page em páginas comuns (mesmos frames), herdando D/R/RO da cabeça.
+        // Usado antes de despejar um dos frames do grupo.
+        public void divideHuge(int cabeca) {
+            long e = get(cabeca);
+            if (!valida(e) || !huge(e)) {
+                return;
             }
-            for (PCB p : prontos) {
-                System.out.println(p.id + "\tREADY\t\t" + p.programName);
+            int base = frame(e);
+            long herdados = e & (BIT_SUJO | BIT_REFERENCIADO | BIT_SOMENTE_LEITURA);
+            for (int i = 1; i < PAGINAS_POR_HUGE; i++) {
+                mapeia(cabeca + i, base + i);
+                ligaBits(cabeca + i, herdados);
             }
-            for (PCB p : bloqueados) {
-                System.out.println(p.id + "\tBLOCKED\t\t" + p.programName);
+            desligaBits(cabeca, BIT_HUGE);
+        }
+
+        // Grupo pode virar huge page: cabe no espaço e nenhuma página está na memória ou no swap
+        public boolean grupoElegivel(int cabeca) {
+            if (cabeca + PAGINAS_POR_HUGE > numPaginas) {
+                return false;
             }
-            if (rodando == null && prontos.isEmpty() && bloqueados.isEmpty()) {
-                System.out.println("Nenhum processo ativo.");
+            for (int i = 0; i < PAGINAS_POR_HUGE; i++) {
+                long e = get(cabeca + i);
+                if (valida(e) || emSwap(e)) {
+                    return false;
+                }
             }
+            return true;
         }
 
-        public void dump(int id) {
-            PCB pcb = null;
-            if (rodando != null && rodando.id == id) {
-                pcb = rodando;
-            } else {
-                for (PCB p : prontos) {
-                    if (p.id == id) {
-                        pcb = p;
-                        break;
-                    }
+        // Grupo sem nenhum conteúdo no disco (pode ser zerado em vez de lido)
+        public boolean grupoDemandZero(int cabeca) {
+            for (int i = 0; i < PAGINAS_POR_HUGE; i++) {
+                if (!demandZero(get(cabeca + i))) {
+                    return false;
                 }
-                if (pcb == null) {
-                    for (PCB p : bloqueados) {
-                        if (p.id == id) {
-                            pcb = p;
-                            break;
-                        }
-                    }
-                }
-            }
-            if (pcb == null) {
-                System.out.println("GP: Processo " + id + " não encontrado.");
-                return;
             }
-            System.out.println("=== DUMP DO PROCESSO " + id + " (" + pcb.programName + ") ===");
-            System.out.println("PC: " + pcb.pc);
-            System.out.println("Estado: " + pcb.estado);
-            System.out.println("Registradores:");
-            for (int i = 0; i < pcb.reg.length; i++) {
-                System.out.println("  r[" + i + "]: " + pcb.reg[i]);
+            return true;
+        }
+
+        public void setHuge(boolean ligado) {
+            this.hugeTotal = ligado;
+            if (!ligado) {
+                synchronized (this) {
+                    gruposHuge.clear();
+                }
             }
-            System.out.println("Tabela de Páginas:");
-            for (int i = 0; i < pcb.tabelaPaginas.length; i++) {
-                PageTableEntry entry = pcb.tabelaPaginas[i];
-                System.out.println("  Página " + i + " -> Frame " + entry.frameNumber + 
-                                 " [V:" + entry.validBit + " D:" + entry.dirtyBit + 
-                                 " Disk:" + entry.diskAddress + "]");
+        }
+
+        public boolean hugeLigado() {
+            return hugeTotal;
+        }
+
+        // Marca para huge pages os grupos inteiramente contidos em [paginaIni, paginaFim)
+        public synchronized void marcaHuge(int paginaIni, int paginaFim) {
+            int primeiro = (paginaIni + PAGINAS_POR_HUGE - 1) >> BITS_HUGE;
+            int ultimo = paginaFim >> BITS_HUGE;
+            if (primeiro < ultimo) {
+                gruposHuge.set(primeiro, ultimo);
             }
         }
-    }
 
-    // -------------------------------------------------------------------------------------------------------
-    // --------------------- H A R D W A R E - definicoes de HW
-    // ----------------------------------------------
+        public synchronized boolean querHuge(int pagina) {
+            return hugeTotal || gruposHuge.get(pagina >> BITS_HUGE);
+        }
 
-    public class Memory {
-        public Word[] pos; // pos[i] é a posição i da memória. cada posição é uma palavra.
+        // Página despejada para o swap: inválida, com o conteúdo no slot indicado
+        public void paraSwap(int pagina, int slot) {
+            long campo = ((long) slot) << DESLOC_DISCO;
+            long atual;
+            do {
+                atual = get(pagina);
+            } while (!cas(pagina, atual, ((atual & 0xFFFFFFFFL) & ~BIT_VALIDO) | BIT_SWAP | campo));
+        }
 
-        public Memory(int size) {
-            pos = new Word[size];
-            for (int i = 0; i < pos.length; i++) {
-                pos[i] = new Word(Opcode.___, -1, -1, -1);
-            }
+        // Volta a entrada ao estado vazio (página nunca usada)
+        public void limpa(int pagina) {
+            long atual;
+            do {
+                atual = get(pagina);
+                if (atual == ENTRADA_VAZIA) {
+                    return;
+                }
+            } while (!cas(pagina, atual, ENTRADA_VAZIA));
         }
-    }
 
-    public class Word {
-        public Opcode opc;
-        public int ra;
-        public int rb;
-        public int p;
+        public void setEnderecoDisco(int pagina, int endereco) {
+            long campo = ((long) endereco) << DESLOC_DISCO;
+            long atual;
+            do {
+                atual = get(pagina);
+            } while (!cas(pagina, atual, (atual & 0xFFFFFFFFL) | campo));
+        }
 
-        public Word(Opcode _opc, int _ra, int _rb, int _p) {
-            opc = _opc;
-            ra = _ra;
-            rb = _rb;
-            p  = _p;
+        public PageTableEntry entrada(int pagina) {
+            return new PageTableEntry(this, pagina);
         }
     }
 
-    // -------------------------------------------------------------------------------------------------------
-    // --------------------- C P U - definicoes da CPU
-    // -----------------------------------------------------
+    // ------------------- PAGE TABLE ENTRY -------------------
+    // Visão somente leitura de uma entrada da TabelaPaginas (usada por dump e relatórios)
+    public static class PageTableEntry {
+        private final TabelaPaginas tabela;
+        private final int pagina;
 
-    public enum Opcode {
-        DATA, ___, JMP, JMPI, JMPIG, JMPIL, JMPIE, JMPIM, JMPIGM, JMPILM, JMPIEM,
-        JMPIGK, JMPILK, JMPIEK, JMPIGT, ADDI, SUBI, ADD, SUB, MULT,
-        LDI, LDD, STD, LDX, STX, MOVE, SYSCALL, STOP
-    }
+        public PageTableEntry(TabelaPaginas _tabela, int _pagina) {
+            this.tabela = _tabela;
+            this.pagina = _pagina;
+        }
 
-    public enum Interrupts {
-        noInterrupt, intEnderecoInvalido, intInstrucaoInvalida, intOverflow, 
-        intFimDeFatiaDeTempo, intIO, intPageFault, intFimCargaDiscoVM, intFimSalvaDiscoVM;
+        public int frameNumber()      { return TabelaPaginas.frame(tabela.get(pagina)); }
+        public boolean validBit()     { return TabelaPaginas.valida(tabela.get(pagina)); }
+        public boolean dirtyBit()     { return TabelaPaginas.suja(tabela.get(pagina)); }
+        public boolean referencedBit(){ return TabelaPaginas.referenciada(tabela.get(pagina)); }
+        public boolean readOnlyBit()  { return TabelaPaginas.somenteLeitura(tabela.get(pagina)); }
+        public boolean swapBit()      { return TabelaPaginas.emSwap(tabela.get(pagina)); }
+        public boolean hugeBit()      { return TabelaPaginas.huge(tabela.get(pagina)); }
+        public boolean sharedBit()    { return TabelaPaginas.compartilhada(tabela.get(pagina)); }
+        public int diskAddress()      { return TabelaPaginas.enderecoDisco(tabela.get(pagina)); }
     }
 
-    // ------------------- GERENTE DE MEMÓRIA COM PAGINAÇÃO E VITIMIZAÇÃO -------------------
-    public class GerenteMemoria {
-        private boolean[] framesOcupados;
-        private int numFramesLivres;
-        private int tamPg;
-        private LinkedList<Integer> fifoQueue; // Para política FIFO de substituição
-        private Map<Integer, Pair<PCB, Integer>> frameToPageMap; // Mapeia frame -> (PCB, pageNumber)
+    // ------------------- CONTADORES DE DESEMPENHO -------------------
+    // Contadores de um processo. Ficam na TabelaProcessos, CAMPOS longs por pid (como os
+    // registradores), e só o kernel os atualiza, enquanto atende o próprio processo: criar um
+    // processo não aloca nada para eles. Um objeto Contadores é só o retrato lido na consulta.
+    // Os totais do sistema somam, na consulta, os processos vivos aos acumulados dos que já
+    // terminaram (GerenteProcessos.stats).
+    public static class Contadores {
+        // Nome de cada chamada de sistema pelo código (r8); 0 = código inválido
+        public static final String[] CHAMADAS = { "inválida", "read", "write", "sbrk", "huge", "shmget", "shmat",
+                                                  "shmdt", "send", "receive", "sleep", "readv", "writev" };
 
-        public GerenteMemoria(int tamMem, int tamPg) {
-            int numFrames = tamMem / tamPg;
-            this.tamPg = tamPg;
-            this.framesOcupados = new boolean[numFrames];
-            Arrays.fill(this.framesOcupados, false);
-            this.numFramesLivres = numFrames;
-            this.fifoQueue = new LinkedList<>();
-            this.frameToPageMap = new HashMap<>();
-            
-            // Inicializa a fila FIFO com todos os frames
-            for (int i = 0; i < numFrames; i++) {
-                fifoQueue.add(i);
-            }
+        // Posição de cada contador na faixa do pid em TabelaProcessos
+        public static final int TROCAS_CONTEXTO = 0;
+        public static final int QUANTA = 1;
+        public static final int FALTAS_MAIORES = 2;
+        public static final int FALTAS_MENORES = 3;
+        public static final int DESPEJOS = 4;
+        public static final int GRAVACOES = 5;
+        public static final int PRONTO_NS = 6;
+        public static final int RODANDO_NS = 7;
+        public static final int BLOQUEADO_NS = 8;
+        public static final int CHAMADA = 9; // CHAMADA + código, um por chamada
+        public static final int CAMPOS = CHAMADA + CHAMADAS.length;
+
+        public static int chamada(int codigo) {
+            return CHAMADA + (codigo > 0 && codigo < CHAMADAS.length ? codigo : 0);
         }
 
-        public int alocaFrame() {
-            if (numFramesLivres > 0) {
-                for (int i = 0; i < framesOcupados.length; i++) {
-                    if (!framesOcupados[i]) {
-                        framesOcupados[i] = true;
-                        numFramesLivres--;
-                        fifoQueue.remove((Integer)i); // Remove da posição atual
-                        fifoQueue.add(i); // Coloca no final (mais recente)
-                        return i;
-                    }
-                }
+        public long instrucoes;      // Preenchido no retrato (o PCB já conta em instrucoesExecutadas)
+        public long trocasContexto;  // Vezes em que o processo foi colocado na CPU
+        public long quanta;          // Fatias de tempo esgotadas
+        public long faltasMaiores;   // Faltas de página atendidas com leitura do disco
+        public long faltasMenores;   // Faltas de página atendidas sem disco (demand-zero)
+        public long despejos;        // Páginas do processo tiradas da memória por vitimização
+        public long gravacoes;       // Dos despejos, os que gravaram a página suja no swap
+        public long prontoNs;        // Tempo em READY, RUNNING e BLOCKED (SO.agora)
+        public long rodandoNs;
+        public long bloqueadoNs;
+        public final long[] chamadas = new long[CHAMADAS.length];
+
+        // Soma a faixa de um pid (CAMPOS posições a partir de 'base')
+        public void soma(long[] banco, int base) {
+            trocasContexto += banco[base + TROCAS_CONTEXTO];
+            quanta += banco[base + QUANTA];
+            faltasMaiores += banco[base + FALTAS_MAIORES];
+            faltasMenores += banco[base + FALTAS_MENORES];
+            despejos += banco[base + DESPEJOS];
+            gravacoes += banco[base + GRAVACOES];
+            prontoNs += banco[base + PRONTO_NS];
+            rodandoNs += banco[base + RODANDO_NS];
+            bloqueadoNs += banco[base + BLOQUEADO_NS];
+            for (int i = 0; i < chamadas.length; i++) {
+                chamadas[i] += banco[base + CHAMADA + i];
             }
-            return -1; // Sem frames livres
         }
 
-        public void liberaFrame(int frame) {
-            if (frame >= 0 && frame < framesOcupados.length && framesOcupados[frame]) {
-                framesOcupados[frame] = false;
-                numFramesLivres++;
-                frameToPageMap.remove(frame);
-                // Não precisa remover/adicionar na fifoQueue pois será recolocado quando realocado
-            }
+        public long faltas() {
+            return faltasMaiores + faltasMenores;
         }
 
-        public void ocupaFrame(int frame, PCB pcb, int pageNumber) {
-            if (frame >= 0 && frame < framesOcupados.length) {
-                framesOcupados[frame] = true;
-                numFramesLivres--;
-                frameToPageMap.put(frame, new Pair<>(pcb, pageNumber));
-                fifoQueue.remove((Integer)frame);
-                fifoQueue.add(frame);
+        public long totalChamadas() {
+            long total = 0;
+            for (long c : chamadas) {
+                total += c;
             }
+            return total;
         }
 
-        public int escolheVitima() {
-            if (fifoQueue.isEmpty()) return -1;
-            return fifoQueue.pollFirst(); // Remove e retorna o mais antigo (FIFO)
+        public void soma(Contadores c) {
+            instrucoes += c.instrucoes;
+            trocasContexto += c.trocasContexto;
+            quanta += c.quanta;
+            faltasMaiores += c.faltasMaiores;
+            faltasMenores += c.faltasMenores;
+            despejos += c.despejos;
+            gravacoes += c.gravacoes;
+            prontoNs += c.prontoNs;
+            rodandoNs += c.rodandoNs;
+            bloqueadoNs += c.bloqueadoNs;
+            for (int i = 0; i < chamadas.length; i++) {
+                chamadas[i] += c.chamadas[i];
+            }
         }
+    }
+
+    // ------------------- HISTOGRAMAS DE LATÊNCIA -------------------
+    // Histograma log-linear de memória fixa, no estilo HDR: valores menores que 2^SUBBITS são
+    // exatos e, acima disso, cada potência de 2 se divide em 2^SUBBITS faixas (erro relativo
+    // de no máximo 1/32). Registrar é um incremento atômico num vetor pré-alocado: sem trava
+    // nem alocação, de qualquer thread. Os percentis são lidos percorrendo as faixas.
+    public static class Histograma {
+        private static final int SUBBITS = 5;
+        private static final int SUB = 1 << SUBBITS;
+        private static final int FAIXAS = (64 - SUBBITS) * SUB;
+
+        public final String nome;
+        private final double escala; // Divisor na exibição (ns -> ms), 1 para contagens
+        private final AtomicLongArray contagens = new AtomicLongArray(FAIXAS);
+        private final AtomicLong amostras = new AtomicLong();
+        private final AtomicLong soma = new AtomicLong();
+        private final AtomicLong maximo = new AtomicLong();
 
-        public Pair<PCB, Integer> findPageByFrame(int frame) {
-            return frameToPageMap.get(frame);
+        public Histograma(String _nome, double _escala) {
+            this.nome = _nome;
+            this.escala = _escala;
         }
 
-        public int getNumFramesLivres() {
-            return numFramesLivres;
+        static int faixa(long v) {
+            if (v < SUB) {
+                return (int) v;
+            }
+            int msb = 63 - Long.numberOfLeadingZeros(v);
+            return ((msb - SUBBITS + 1) << SUBBITS) + (int) (v >>> (msb - SUBBITS)) - SUB;
+        }
+
+        // Maior valor que cai na faixa i
+        static long limite(int i) {
+            int bloco = i >>> SUBBITS;
+            if (bloco == 0) {
+                return i;
+            }
+            long base = (long) ((i & (SUB - 1)) + SUB) << (bloco - 1);
+            return base + (1L << (bloco - 1)) - 1;
+        }
+
+        public void registra(long v) {
+            if (v < 0) {
+                v = 0; // Relógios de threads diferentes podem inverter por pouco
+            }
+            contagens.incrementAndGet(faixa(v));
+            amostras.incrementAndGet();
+            soma.addAndGet(v);
+            long m;
+            while (v > (m = maximo.get()) && !maximo.compareAndSet(m, v)) {
+                // Outra thread subiu o máximo: tenta de novo
+            }
+        }
+
+        public long amostras() {
+            return amostras.get();
+        }
+
+        // Valor abaixo do qual (ou igual) estão p% das amostras (limite superior da faixa)
+        public long percentil(double p) {
+            long n = amostras.get();
+            if (n == 0) {
+                return 0;
+            }
+            long alvo = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+            long acumulado = 0;
+            for (int i = 0; i < FAIXAS; i++) {
+                acumulado += contagens.get(i);
+                if (acumulado >= alvo) {
+                    return Math.min(limite(i), maximo.get());
+                }
+            }
+            return maximo.get();
+        }
+
+        public void zera() {
+            for (int i = 0; i < FAIXAS; i++) {
+                contagens.set(i, 0);
+            }
+            amostras.set(0);
+            soma.set(0);
+            maximo.set(0);
+        }
+
+        public String linha() {
+            long n = amostras.get();
+            String f = escala == 1 ? "\t%.0f" : "\t%.3f";
+            StringBuilder sb = new StringBuilder(String.format("%-26s\t%d", nome, n));
+            sb.append(String.format(Locale.ROOT, f, n == 0 ? 0.0 : soma.get() / escala / n));
+            for (double p : new double[] { 50, 90, 99, 99.9 }) {
+                sb.append(String.format(Locale.ROOT, f, percentil(p) / escala));
+            }
+            sb.append(String.format(Locale.ROOT, f, maximo.get() / escala));
+            return sb.toString();
         }
     }
 
-    // ------------------- CLASSE PAIR PARA MAPEAMENTO -------------------
-    public static class Pair<K, V> {
-        private K key;
-        private V value;
+    // Histogramas do kernel. Tempos pelo relógio do kernel (SO.agora: virtual no -sim).
+    public static class Latencias {
+        // Falta de página do trap até a página mapeada, por caminho de atendimento
+        public final Histograma faltaLivre = new Histograma("falta, frame livre (ms)", 1e6);
+        public final Histograma faltaLimpa = new Histograma("falta, vítima limpa (ms)", 1e6);
+        public final Histograma faltaSuja = new Histograma("falta, vítima suja (ms)", 1e6);
+        public final Histograma chamada = new Histograma("E/S, trap até intIO (ms)", 1e6);
+        public final Histograma esperaPronto = new Histograma("fila de prontos (ms)", 1e6);
+        public final Histograma filaDisco = new Histograma("fila do disco (pedidos)", 1);
+        private final Histograma[] todos = { faltaLivre, faltaLimpa, faltaSuja, chamada, esperaPronto, filaDisco };
 
-        public Pair(K key, V value) {
-            this.key = key;
-            this.value = value;
+        public void info() {
+            System.out.println("=== LATÊNCIAS ===");
+            System.out.println(String.format("%-26s", "Medida") + "\tAmostras\tMédia\tp50\tp90\tp99\tp99.9\tMáx.");
+            for (Histograma h : todos) {
+                System.out.println(h.linha());
+            }
         }
 
-        public K getKey() { return key; }
-        public V getValue() { return value; }
+        public void zera() {
+            for (Histograma h : todos) {
+                h.zera();
+            }
+            System.out.println("Histogramas de latência zerados.");
+        }
     }
 
-    public class CPU {
-        private int maxInt;
-        private int minInt;
-        private int pc;
-        private Word ir;
-        private int[] reg;
-        private Interrupts irpt;
-        private Word[] m;
-        private InterruptHandling ih;
-        private SysCallHandling sysCall;
-        private boolean cpuStop;
-        private boolean debug;
-        private Utilities u;
-        private PageTableEntry[] regTabelaPaginas;
-        private int tamPg;
-        private int instrucoesExecutadas = 0;
-        private final int DELTA_INSTRUCOES = 4;
+    // ------------------- EVENTOS JFR -------------------
+    // Atividade do kernel no Java Flight Recorder, para correlacionar com GC e CPU do host no
+    // JDK Mission Control. Padrão de uso: cria o evento e só preenche e grava se isEnabled();
+    // sem gravação ativa isso é um teste barato e o objeto nem chega a ser alocado (escape
+    // analysis). Tempos "ns" são do relógio do kernel (SO.agora: virtual no -sim).
+    @Name("sistema.FaltaPagina")
+    @Label("Falta de página")
+    @Category({ "Sistema", "Memória" })
+    @StackTrace(false)
+    public static class EventoFaltaPagina extends Event {
+        @Label("Processo") int pid;
+        @Label("Página") int pagina;
+        @Label("Endereço lógico") int endereco;
+    }
 
-        // Mecanismo para interrupção de E/S
-        private volatile boolean ioInterruptPending = false;
-        private volatile int ioProcessId = -1;
+    @Name("sistema.FaltaAtendida")
+    @Label("Falta atendida")
+    @Description("Página mapeada; tempo desde o primeiro trap da falta")
+    @Category({ "Sistema", "Memória" })
+    @StackTrace(false)
+    public static class EventoFaltaAtendida extends Event {
+        @Label("Processo") int pid;
+        @Label("Caminho") String caminho;
+        @Label("Tempo de atendimento") @Timespan(Timespan.NANOSECONDS) long atendimento;
+    }
 
-        // Mecanismo para interrupção de disco VM
-        private volatile boolean ioVMInterruptPending = false;
-        private volatile int ioVMProcessId = -1;
-        private volatile int ioVMTipo = -1;
+    @Name("sistema.Despejo")
+    @Label("Despejo de página")
+    @Category({ "Sistema", "Memória" })
+    @StackTrace(false)
+    public static class EventoDespejo extends Event {
+        @Label("Processo da vítima") int pidVitima;
+        @Label("Página da vítima") int pagina;
+        @Label("Frame") int frame;
+        @Label("Suja") boolean suja;
+        @Label("Processo da falta") int pidFalta;
+    }
 
-        // Para page faults
-        private int pageFaultLogicalAddress = -1;
+    @Name("sistema.FimQuantum")
+    @Label("Fim de quantum")
+    @Category({ "Sistema", "Escalonamento" })
+    @StackTrace(false)
+    public static class EventoFimQuantum extends Event {
+        @Label("Processo") int pid;
+        @Label("Instruções na fatia") int instrucoes;
+        @Label("Preemptado") boolean preemptado;
+    }
 
-        public CPU(Memory _mem, boolean _debug, int _tamPg) {
-            maxInt = 32767;
-            minInt = -32767;
-            m = _mem.pos;
-            reg = new int[10];
-            debug = _debug;
-            tamPg = _tamPg;
-            regTabelaPaginas = null;
+    @Name("sistema.Syscall")
+    @Label("Chamada de sistema")
+    @Description("Trap de SYSCALL (inclui as reexecuções após faltas e na volta da leitura)")
+    @Category({ "Sistema", "Chamadas" })
+    @StackTrace(false)
+    public static class EventoSyscall extends Event {
+        @Label("Processo") int pid;
+        @Label("Código") int codigo;
+        @Label("Chamada") String chamada;
+    }
+
+    @Name("sistema.Despacho")
+    @Label("Despacho")
+    @Category({ "Sistema", "Escalonamento" })
+    @StackTrace(false)
+    public static class EventoDespacho extends Event {
+        @Label("Processo") int pid;
+        @Label("Espera na fila de prontos") @Timespan(Timespan.NANOSECONDS) long espera;
+    }
+
+    @Name("sistema.OperacaoDisco")
+    @Label("Operação de disco")
+    @Description("Duração no host: inclui a latência simulada (exceto no -sim) e a cópia")
+    @Category({ "Sistema", "Dispositivos" })
+    @StackTrace(false)
+    public static class EventoDisco extends Event {
+        @Label("Processo") int pid;
+        @Label("Operação") String operacao;
+        @Label("Página") int pagina;
+        @Label("Frame") int frame;
+        @Label("Páginas") int paginas;
+        @Label("Swap") boolean swap;
+    }
+
+    // Os registradores não ficam no PCB: são guardados no banco de registradores da
+    // TabelaProcessos (NUM_REGS inteiros por pid), evitando um int[] por processo.
+    public class PCB {
+        public int id;
+        public int pc;
+        public TabelaPaginas tabelaPaginas;  // Entradas empacotadas (ver TabelaPaginas)
+        public volatile ProcessState estado;
+        public Program programa;  // Imagem compartilhada entre os processos do mesmo programa (lazy loading)
+        public int brk;           // Fim do espaço de endereçamento (palavras), alterado por sbrk
+        public List<int[]> segmentosAnexados; // {chave, página base} por shmat; null se nenhum
+        public IORequest leituraConcluida;    // Leitura do console a copiar para a memória (SYSCALL reexecutada)
+        public Queue<Integer> roteiroEntrada; // Entrada roteirizada do console; null = fonte compartilhada
+        public Thread executor;               // Modo -kernel vthreads: thread que executa o processo
+        public long prontoDesde;              // Instante (SO.agora) em que entrou na fila de prontos
+        public long criadoEm;                 // Instante (SO.agora) da criação
+        public long naCPUDesde;               // Início da fatia corrente (SO.agora)
+        public long bloqueadoDesde;           // Instante (SO.agora) em que entrou na lista de bloqueados
+        public long faltaDesde = Long.MIN_VALUE; // Trap da falta de página em atendimento (MIN_VALUE: nenhuma)
+        public Histograma caminhoFalta;          // Histograma do caminho dessa falta (Latencias)
+        public final PedidoES desbloqueio = new PedidoES(this); // Pré-alocado para setIOInterrupt
+
+        // Escalonamento proporcional (fair-share)
+        public int peso;                     // Peso do processo (nice): fatia alvo = peso / soma dos pesos
+        public long vruntime;                // Tempo virtual: instruções executadas * PESO_BASE / peso
+        public long instrucoesExecutadas;    // Total de instruções executadas pelo processo
+        private long ordemChegada;           // Desempate FIFO entre vruntimes iguais
+        private int indiceHeap = -1;         // Posição na fila de prontos (-1 se fora da fila)
+
+        // Encadeamento intrusivo na lista de bloqueados
+        private PCB anteriorBloq;
+        private PCB proximoBloq;
+        private boolean naListaBloqueados;
+
+        // Despertador do sleep, encadeado intrusivamente numa posição da RodaTemporizacao
+        private long vencimento;       // Tick do relógio
+        private int posicaoRoda = -1;  // nivel * SLOTS + slot; -1 se não armado
+        private PCB anteriorRoda;
+        private PCB proximoRoda;
+
+        public PCB(int _id, int numPaginas, Program _programa) {
+            this.id = _id;
+            this.tabelaPaginas = new TabelaPaginas(numPaginas);
+            this.programa = _programa;
+            this.pc = 0; // Ponto de entrada LÓGICO é sempre 0
+            this.estado = ProcessState.NEW;
+            this.peso = FilaProntos.PESO_BASE;
+            this.vruntime = 0;
+            this.instrucoesExecutadas = 0;
         }
+    }
 
-        public void setDebug(boolean _debug) {
-            debug = _debug;
+    // ------------------- FILA DE PRONTOS (ESCALONAMENTO PROPORCIONAL) -------------------
+    // Heap binário mínimo indexado, ordenado por vruntime. Cada PCB guarda sua posição
+    // no heap (indiceHeap), de modo que inserção, retirada do mínimo e remoção de um
+    // processo qualquer custam O(log n).
+    public class FilaProntos implements Iterable<PCB> {
+        public static final int PESO_BASE = 1024; // Peso padrão (equivalente a nice 0)
+
+        private PCB[] heap;
+        private int tamanho;
+        private volatile int publicado; // Cópia de 'tamanho' para leitura sem trava (métricas)
+        private long vruntimeMinimo;   // Cresce monotonicamente; referência para novos/acordados
+        private long contadorChegada;
+
+        public FilaProntos() {
+            this.heap = new PCB[16];
+            this.tamanho = 0;
+            this.vruntimeMinimo = 0;
+            this.contadorChegada = 0;
         }
 
-        public void setTabelaPaginas(PageTableEntry[] tabela) {
-            this.regTabelaPaginas = tabela;
+        public synchronized void add(PCB p) {
+            if (p.indiceHeap != -1) {
+                return; // Já está na fila
+            }
+            // Processos novos ou recém-desbloqueados não acumulam crédito enquanto
+            // estavam fora da fila: partem no mínimo do vruntime corrente.
+            if (p.vruntime < vruntimeMinimo) {
+                p.vruntime = vruntimeMinimo;
+            }
+            p.ordemChegada = contadorChegada++;
+            if (tamanho == heap.length) {
+                heap = Arrays.copyOf(heap, tamanho * 2);
+            }
+            heap[tamanho] = p;
+            p.indiceHeap = tamanho;
+            tamanho++;
+            publicado = tamanho;
+            sobe(p.indiceHeap);
+            p.prontoDesde = so.agora();
+            if (p.executor != null) {
+                LockSupport.unpark(p.executor); // Modo vthreads: a thread do processo disputa a CPU
+            }
         }
 
-        public void setContext(int _pc, int[] _reg, PageTableEntry[] _tabelaPaginas) {
-            this.pc = _pc;
-            this.reg = _reg;
-            this.regTabelaPaginas = _tabelaPaginas;
-            this.irpt = Interrupts.noInterrupt;
-            this.instrucoesExecutadas = 0;
+        public synchronized PCB pollFirst() {
+            if (tamanho == 0) {
+                return null;
+            }
+            PCB primeiro = heap[0];
+            removeEm(0);
+            if (primeiro.vruntime > vruntimeMinimo) {
+                vruntimeMinimo = primeiro.vruntime;
+            }
+            return primeiro;
         }
 
-        public int getPc() {
-            return pc;
+        public synchronized boolean remove(PCB p) {
+            int i = p.indiceHeap;
+            if (i < 0 || i >= tamanho || heap[i] != p) {
+                return false;
+            }
+            removeEm(i);
+            return true;
         }
 
-        public int[] getReg() {
-            return reg;
+        // Reposiciona um processo cujo vruntime ou peso mudou enquanto estava na fila
+        public synchronized void atualiza(PCB p) {
+            int i = p.indiceHeap;
+            if (i >= 0 && i < tamanho && heap[i] == p) {
+                sobe(i);
+                desce(p.indiceHeap);
+            }
         }
 
-        public synchronized void setIOInterrupt(int pid) {
-            ioInterruptPending = true;
-            ioProcessId = pid;
+        public synchronized boolean isEmpty() {
+            return tamanho == 0;
         }
 
-        public int getPendingIOProcessId() {
-            return ioProcessId;
+        public synchronized int size() {
+            return tamanho;
         }
 
-        public synchronized void setIOInterruptVM(int pid, int tipo) {
-            ioVMInterruptPending = true;
-            ioVMProcessId = pid;
-            ioVMTipo = tipo;
+        // Sem trava: o tamanho publicado na última alteração
+        public int tamanhoPublicado() {
+            return publicado;
         }
 
-        public int getPageFaultLogicalAddress() {
-            return pageFaultLogicalAddress;
+        // Itera sobre uma cópia (sem ordem definida), para não expor o heap a alterações concorrentes
+        @Override
+        public synchronized Iterator<PCB> iterator() {
+            return Arrays.asList(Arrays.copyOf(heap, tamanho)).iterator();
         }
 
-        private int translate(int logicalAddress) {
-            // Se não há paginação ativa, retorna endereço direto
-            if (regTabelaPaginas == null) {
-                return logicalAddress;
-            }
-            
-            int pageNumber = logicalAddress / tamPg;
-            int offset = logicalAddress % tamPg;
-            
-            // Verifica se a página é válida
-            if (pageNumber < 0 || pageNumber >= regTabelaPaginas.length) {
-                irpt = Interrupts.intEnderecoInvalido;
-                return -1;
+        private void removeEm(int i) {
+            PCB removido = heap[i];
+            tamanho--;
+            publicado = tamanho;
+            if (i != tamanho) {
+                heap[i] = heap[tamanho];
+                heap[i].indiceHeap = i;
+                heap[tamanho] = null;
+                sobe(i);
+                desce(heap[i].indiceHeap);
+            } else {
+                heap[tamanho] = null;
             }
-            
-            PageTableEntry entry = regTabelaPaginas[pageNumber];
-            if (!entry.validBit) {
-                // PAGE FAULT: página não está na memória
-                pageFaultLogicalAddress = logicalAddress;
-                irpt = Interrupts.intPageFault;
-                return -1;
+            removido.indiceHeap = -1;
+        }
+
+        private boolean menor(PCB a, PCB b) {
+            if (a.vruntime != b.vruntime) {
+                return a.vruntime < b.vruntime;
             }
-            
-            // Physical Address Calculation
-            int physicalAddress = (entry.frameNumber * tamPg) + offset;
-            return physicalAddress;
+            return a.ordemChegada < b.ordemChegada;
         }
 
-        public void setAddressOfHandlers(InterruptHandling _ih, SysCallHandling _sysCall) {
-            ih = _ih;
-            sysCall = _sysCall;
+        private void sobe(int i) {
+            PCB p = heap[i];
+            while (i > 0) {
+                int pai = (i - 1) / 2;
+                if (!menor(p, heap[pai])) {
+                    break;
+                }
+                heap[i] = heap[pai];
+                heap[i].indiceHeap = i;
+                i = pai;
+            }
+            heap[i] = p;
+            p.indiceHeap = i;
         }
 
-        public void setUtilities(Utilities _u) {
-            u = _u;
+        private void desce(int i) {
+            PCB p = heap[i];
+            while (true) {
+                int filho = 2 * i + 1;
+                if (filho >= tamanho) {
+                    break;
+                }
+                if (filho + 1 < tamanho && menor(heap[filho + 1], heap[filho])) {
+                    filho++;
+                }
+                if (!menor(heap[filho], p)) {
+                    break;
+                }
+                heap[i] = heap[filho];
+                heap[i].indiceHeap = i;
+                i = filho;
+            }
+            heap[i] = p;
+            p.indiceHeap = i;
         }
+    }
 
-        private boolean legal(int e) {
-            if (e >= 0 && e < m.length) {
-                return true;
+    // ------------------- LISTA DE BLOQUEADOS -------------------
+    // Lista duplamente encadeada intrusiva (os ponteiros ficam no próprio PCB):
+    // inserção e remoção de qualquer processo em O(1), sem alocação de nós.
+    public class ListaBloqueados implements Iterable<PCB> {
+        private PCB cabeca;
+        private PCB cauda;
+        private int tamanho;
+        private volatile int publicado; // Cópia de 'tamanho' para leitura sem trava (métricas)
+
+        public synchronized void add(PCB p) {
+            if (p.naListaBloqueados) {
+                return;
+            }
+            p.anteriorBloq = cauda;
+            p.proximoBloq = null;
+            if (cauda != null) {
+                cauda.proximoBloq = p;
             } else {
-                irpt = Interrupts.intEnderecoInvalido;
-                return false;
+                cabeca = p;
             }
+            cauda = p;
+            p.naListaBloqueados = true;
+            p.bloqueadoDesde = so.agora();
+            tamanho++;
+            publicado = tamanho;
         }
 
-        private boolean testOverflow(int v) {
-            if ((v < minInt) || (v > maxInt)) {
-                irpt = Interrupts.intOverflow;
+        public synchronized boolean remove(PCB p) {
+            if (!p.naListaBloqueados) {
                 return false;
             }
+            if (p.anteriorBloq != null) {
+                p.anteriorBloq.proximoBloq = p.proximoBloq;
+            } else {
+                cabeca = p.proximoBloq;
+            }
+            if (p.proximoBloq != null) {
+                p.proximoBloq.anteriorBloq = p.anteriorBloq;
+            } else {
+                cauda = p.anteriorBloq;
+            }
+            p.anteriorBloq = null;
+            p.proximoBloq = null;
+            p.naListaBloqueados = false;
+            so.gp.tabela.conta(p, Contadores.BLOQUEADO_NS, so.agora() - p.bloqueadoDesde);
+            tamanho--;
+            publicado = tamanho;
             return true;
         }
 
-        // Método auxiliar para marcar dirty bit
-        private void markPageDirty(int logicalAddress) {
-            if (regTabelaPaginas != null) {
-                int pageNumber = logicalAddress / tamPg;
-                if (pageNumber >= 0 && pageNumber < regTabelaPaginas.length) {
-                    PageTableEntry entry = regTabelaPaginas[pageNumber];
-                    if (entry.validBit) {
-                        entry.dirtyBit = true;
-                    }
+        public synchronized boolean isEmpty() {
+            return tamanho == 0;
+        }
+
+        public synchronized int size() {
+            return tamanho;
+        }
+
+        // Sem trava: o tamanho publicado na última alteração
+        public int tamanhoPublicado() {
+            return publicado;
+        }
+
+        // Itera sobre uma cópia, em ordem de bloqueio
+        @Override
+        public synchronized Iterator<PCB> iterator() {
+            List<PCB> copia = new ArrayList<>(tamanho);
+            for (PCB p = cabeca; p != null; p = p.proximoBloq) {
+                copia.add(p);
+            }
+            return copia.iterator();
+        }
+    }
+
+    // ------------------- TABELA DE PROCESSOS -------------------
+    // Vetor indexado por pid: busca, inserção e remoção em O(1). Os pids são reciclados
+    // (pilha de pids livres), então a tabela e o banco de registradores crescem apenas
+    // até o número máximo de processos simultâneos.
+    public class TabelaProcessos implements Iterable<PCB> {
+        public static final int NUM_REGS = 10;
+
+        private PCB[] porPid;
+        private int[] bancoRegistradores;  // NUM_REGS registradores por pid
+        private long[] bancoContadores;    // Contadores.CAMPOS contadores por pid
+        private int[] pidsLivres;          // Pilha de pids liberados
+        private int numPidsLivres;
+        private int proximoPid;            // Menor pid ainda nunca usado
+        private int ativos;
+
+        public TabelaProcessos() {
+            this.porPid = new PCB[64];
+            this.bancoRegistradores = new int[64 * NUM_REGS];
+            this.bancoContadores = new long[64 * Contadores.CAMPOS];
+            this.pidsLivres = new int[64];
+            this.numPidsLivres = 0;
+            this.proximoPid = 0;
+            this.ativos = 0;
+        }
+
+        // Reserva um pid (reutilizando um liberado, se houver) com registradores e contadores zerados
+        public synchronized int alocaPid() {
+            int pid;
+            if (numPidsLivres > 0) {
+                pid = pidsLivres[--numPidsLivres];
+            } else {
+                pid = proximoPid++;
+                if (pid >= porPid.length) {
+                    porPid = Arrays.copyOf(porPid, porPid.length * 2);
+                    bancoRegistradores = Arrays.copyOf(bancoRegistradores, porPid.length * NUM_REGS);
+                    bancoContadores = Arrays.copyOf(bancoContadores, porPid.length * Contadores.CAMPOS);
                 }
             }
+            Arrays.fill(bancoRegistradores, pid * NUM_REGS, (pid + 1) * NUM_REGS, 0);
+            Arrays.fill(bancoContadores, pid * Contadores.CAMPOS, (pid + 1) * Contadores.CAMPOS, 0);
+            return pid;
         }
 
-        public void run_one_instruction() {
-            cpuStop = false;
-            
-            // Verifica interrupção de E/S pendente
-            if (ioInterruptPending) {
-                irpt = Interrupts.intIO;
-                ioInterruptPending = false;
+        // Devolve um pid reservado que não chegou a ser inserido na tabela
+        public synchronized void liberaPid(int pid) {
+            if (numPidsLivres == pidsLivres.length) {
+                pidsLivres = Arrays.copyOf(pidsLivres, pidsLivres.length * 2);
             }
-            
-            // Verifica interrupção de disco VM
-            if (ioVMInterruptPending) {
-                if (ioVMTipo == 0) {
-                    irpt = Interrupts.intFimCargaDiscoVM;
-                } else if (ioVMTipo == 1) {
-                    irpt = Interrupts.intFimSalvaDiscoVM;
-                }
-                ioVMInterruptPending = false;
+            pidsLivres[numPidsLivres++] = pid;
+        }
+
+        public synchronized void insere(PCB p) {
+            if (porPid[p.id] == null) {
+                ativos++;
             }
-            
-            // --------------------------------------------------------------------------------------------------
-            // FASE DE FETCH
-            int physPC = translate(pc);
-            if (legal(physPC)) {
-                ir = m[physPC];
-                
-                if (debug) {
-                    System.out.print("                                                         regs: ");
-                    for (int i = 0; i < 10; i++) {
-                        System.out.print(" r[" + i + "]:" + reg[i]);
-                    }
-                    System.out.println();
+            porPid[p.id] = p;
+        }
+
+        public synchronized void carregaRegistradores(int pid, int[] destino) {
+            System.arraycopy(bancoRegistradores, pid * NUM_REGS, destino, 0, NUM_REGS);
+        }
+
+        public synchronized void salvaRegistradores(int pid, int[] origem) {
+            System.arraycopy(origem, 0, bancoRegistradores, pid * NUM_REGS, NUM_REGS);
+        }
+
+        public synchronized int leRegistrador(int pid, int r) {
+            return bancoRegistradores[pid * NUM_REGS + r];
+        }
+
+        // Soma 'valor' a um contador do processo; ignorado se o processo já saiu da tabela
+        // (o pid pode ter sido reaproveitado)
+        public synchronized void conta(PCB p, int campo, long valor) {
+            if (porPid[p.id] == p) {
+                bancoContadores[p.id * Contadores.CAMPOS + campo] += valor;
+            }
+        }
+
+        public synchronized long contador(PCB p, int campo) {
+            return porPid[p.id] == p ? bancoContadores[p.id * Contadores.CAMPOS + campo] : 0;
+        }
+
+        // Soma os contadores do processo em 'destino'
+        public synchronized void leContadores(PCB p, Contadores destino) {
+            if (porPid[p.id] == p) {
+                destino.soma(bancoContadores, p.id * Contadores.CAMPOS);
+            }
+        }
+
+        public synchronized PCB busca(int pid) {
+            if (pid < 0 || pid >= porPid.length) {
+                return null;
+            }
+            return porPid[pid];
+        }
+
+        public synchronized PCB remove(int pid) {
+            PCB p = busca(pid);
+            if (p != null) {
+                porPid[pid] = null;
+                ativos--;
+                liberaPid(pid);
+            }
+            return p;
+        }
+
+        public synchronized int size() {
+            return ativos;
+        }
+
+        // Itera sobre uma cópia, em ordem de pid
+        @Override
+        public synchronized Iterator<PCB> iterator() {
+            List<PCB> copia = new ArrayList<>(ativos);
+            for (PCB p : porPid) {
+                if (p != null) {
+                    copia.add(p);
                 }
-                if (debug) {
-                    System.out.print("                         pc: " + pc + "       exec: ");
-                    u.dump(ir);
+            }
+            return copia.iterator();
+        }
+    }
+
+    // ------------------- CLASSE PedidoES -------------------
+    // Pedido genérico a um dispositivo. A chave escolhe a fila de submissão: pedidos com a
+    // mesma chave são atendidos em ordem. 'conclui' roda no tratamento da interrupção, na
+    // thread da CPU; por padrão apenas desbloqueia o processo.
+    public class PedidoES {
+        public PCB pcb;
+
+        public PedidoES(PCB _pcb) {
+            this.pcb = _pcb;
+        }
+
+        public int chave() {
+            return pcb == null ? 0 : pcb.id;
+        }
+
+        public void conclui() {
+            if (so.gp.bloqueados.remove(pcb)) {
+                pcb.estado = ProcessState.READY;
+                so.gp.prontos.add(pcb);
+                System.out.println("    > INT IO: Processo " + pcb.id + " desbloqueado -> READY.");
+            }
+        }
+    }
+
+    // Operação vinda de fora do kernel (CLI, gerador de carga) que precisa do contexto do
+    // kernel: entra na fila de conclusões da CPU como um pedido e roda no tratamento de
+    // intDispositivo, na thread que está com a CPU. Quem submeteu espera em 'espera'.
+    public class OperacaoKernel extends PedidoES {
+        private final Runnable operacao;
+        private final CountDownLatch feita = new CountDownLatch(1);
+
+        public OperacaoKernel(Runnable _operacao) {
+            super(null);
+            this.operacao = _operacao;
+        }
+
+        @Override
+        public void conclui() {
+            try {
+                synchronized (so.trava) {
+                    operacao.run();
                 }
+            } finally {
+                feita.countDown();
+            }
+        }
 
-            // --------------------------------------------------------------------------------------------------
-            // FASE DE EXECUCAO DA INSTRUCAO CARREGADA NO ir
-                switch (ir.opc) {
-                    case LDI:
-                        reg[ir.ra] = ir.p;
-                        pc++;
-                        break;
-                    case LDD:
-                        int physAddrLDD = translate(ir.p);
-                        if (legal(physAddrLDD)) {
-                            reg[ir.ra] = m[physAddrLDD].p;
-                            pc++;
-                        }
-                        break;
-                    case LDX:
-                        int logicalAddrLDX = reg[ir.rb];
-                        int physAddrLDX = translate(logicalAddrLDX);
-                        if (legal(physAddrLDX)) {
-                            reg[ir.ra] = m[physAddrLDX].p;
-                            pc++;
-                        }
-                        break;
-                    case STD:
-                        int physAddrSTD = translate(ir.p);
-                        if (legal(physAddrSTD)) {
+        public void espera() {
+            try {
+                feita.await();
+            } catch (InterruptedException e) { e.printStackTrace(); }
+        }
+    }
+
+    // ------------------- CLASSE IORequest -------------------
+    // Transferência de um bloco [endLogico, endLogico + tamanho) com o console. Os dados
+    // viajam num buffer do kernel: a thread do console não acessa a memória do processo.
+    // Os pedidos são reaproveitados (SO.pedidosConsole), e o buffer junto, se couber.
+    public class IORequest extends PedidoES {
+        public int endLogico;
+        public int tipo;     // 1: leitura, 2: escrita
+        public int tamanho;
+        public int[] dados;  // Escrita: valores a escrever; leitura: preenchido pelo console
+        public int preenchidos; // Leitura: palavras já obtidas da entrada
+        public long emitidoEm;  // Instante (SO.agora) do trap que gerou o pedido
+
+        public IORequest(PCB _pcb, int _endLogico, int _tipo, int _tamanho) {
+            super(_pcb);
+            this.endLogico = _endLogico;
+            this.tipo = _tipo;
+            this.tamanho = _tamanho;
+            this.dados = new int[_tamanho];
+        }
+
+        public IORequest prepara(PCB _pcb, int _endLogico, int _tipo, int _tamanho) {
+            this.pcb = _pcb;
+            this.endLogico = _endLogico;
+            this.tipo = _tipo;
+            this.tamanho = _tamanho;
+            this.preenchidos = 0;
+            if (dados.length < _tamanho) {
+                dados = new int[_tamanho];
+            }
+            this.emitidoEm = so.agora();
+            return this;
+        }
+
+        // A escrita volta ao reciclador aqui; a leitura, depois que o kernel copiar os dados
+        @Override
+        public void conclui() {
+            so.latencias.chamada.registra(so.agora() - emitidoEm);
+            super.conclui();
+            if (tipo == 2) {
+                so.pedidosConsole.devolve(this);
+            }
+        }
+    }
+
+    // ------------------- CLASSE IORequestVM -------------------
+    public class IORequestVM extends PedidoES {
+        public int frameNumber;
+        public int pageNumber;
+        public int diskAddress;
+        public int tipoOperacao; // 0: LOAD_PAGE, 1: SAVE_PAGE
+        public boolean swap;     // diskAddress é um slot de swap (senão, posição na imagem)
+        public int numPaginas = 1; // > 1: carga de uma huge page (frames contíguos)
+
+        public IORequestVM(PCB _pcb, int _frameNumber, int _pageNumber, int _diskAddress, int _tipoOperacao) {
+            this(_pcb, _frameNumber, _pageNumber, _diskAddress, _tipoOperacao, false);
+        }
+
+        public IORequestVM(PCB _pcb, int _frameNumber, int _pageNumber, int _diskAddress, int _tipoOperacao, boolean _swap) {
+            super(_pcb);
+            this.frameNumber = _frameNumber;
+            this.pageNumber = _pageNumber;
+            this.diskAddress = _diskAddress;
+            this.tipoOperacao = _tipoOperacao;
+            this.swap = _swap;
+        }
+
+        public IORequestVM prepara(PCB _pcb, int _frameNumber, int _pageNumber, int _diskAddress, int _tipoOperacao, boolean _swap) {
+            this.pcb = _pcb;
+            this.frameNumber = _frameNumber;
+            this.pageNumber = _pageNumber;
+            this.diskAddress = _diskAddress;
+            this.tipoOperacao = _tipoOperacao;
+            this.swap = _swap;
+            this.numPaginas = 1;
+            return this;
+        }
+
+        // Operações sobre o mesmo slot de swap ficam na mesma fila (salvar antes de recarregar)
+        @Override
+        public int chave() {
+            return swap ? diskAddress : frameNumber;
+        }
+
+        @Override
+        public void conclui() {
+            if (tipoOperacao == 0) {
+                so.ih.handleFimCargaDiscoVM(this);
+            } else {
+                so.ih.handleFimSalvaDiscoVM(this);
+            }
+            so.pedidosDisco.devolve(this);
+        }
+    }
+
+    // ------------------- FILA DE FALTAS PENDENTES -------------------
+    // Faltas à espera do frame de uma vítima que está sendo salva no swap. Fila circular de
+    // posições pré-alocadas (vetores paralelos): enfileirar só grava campos, sem criar objetos.
+    // Usada apenas no contexto do kernel; se encher, dobra de tamanho.
+    public class FilaFaltasPendentes {
+        private PCB[] pcbs = new PCB[16];
+        private int[] paginas = new int[16];
+        private int inicio;
+        private int tamanho;
+
+        public void adiciona(PCB pcb, int pagina) {
+            if (tamanho == pcbs.length) {
+                cresce();
+            }
+            int i = (inicio + tamanho) & (pcbs.length - 1);
+            pcbs[i] = pcb;
+            paginas[i] = pagina;
+            tamanho++;
+        }
+
+        public boolean vazia() {
+            return tamanho == 0;
+        }
+
+        // Processo e página da falta mais antiga (só com a fila não vazia)
+        public PCB pcb() {
+            return pcbs[inicio];
+        }
+
+        public int pagina() {
+            return paginas[inicio];
+        }
+
+        public void remove() {
+            pcbs[inicio] = null;
+            inicio = (inicio + 1) & (pcbs.length - 1);
+            tamanho--;
+        }
+
+        // Descarta as faltas do processo (desalocado), mantendo a ordem das demais
+        public void removeProcesso(PCB pcb) {
+            int mantidas = 0;
+            for (int k = 0; k < tamanho; k++) {
+                int i = (inicio + k) & (pcbs.length - 1);
+                if (pcbs[i] != pcb) {
+                    int j = (inicio + mantidas) & (pcbs.length - 1);
+                    pcbs[j] = pcbs[i];
+                    paginas[j] = paginas[i];
+                    mantidas++;
+                }
+            }
+            for (int k = mantidas; k < tamanho; k++) {
+                pcbs[(inicio + k) & (pcbs.length - 1)] = null;
+            }
+            tamanho = mantidas;
+        }
+
+        private void cresce() {
+            PCB[] novosPcbs = new PCB[pcbs.length * 2];
+            int[] novasPaginas = new int[pcbs.length * 2];
+            for (int k = 0; k < tamanho; k++) {
+                int i = (inicio + k) & (pcbs.length - 1);
+                novosPcbs[k] = pcbs[i];
+                novasPaginas[k] = paginas[i];
+            }
+            pcbs = novosPcbs;
+            paginas = novasPaginas;
+            inicio = 0;
+        }
+    }
+
+    // ------------------- ANEL DE PEDIDOS -------------------
+    // Fila circular pré-alocada de pedidos, no estilo do Disruptor: vários produtores e um só
+    // consumidor. Cada posição tem um número de sequência (como na CaixaMensagens); o produtor
+    // reserva a posição com compareAndSet na cauda e a publica gravando a sequência, sem criar
+    // nós. O consumidor estaciona com o anel vazio e é acordado por quem publicar.
+    public class AnelPedidos {
+        private static final VarHandle SEQUENCIA = MethodHandles.arrayElementVarHandle(long[].class);
+
+        private final int mascara;
+        private final long[] sequencias;
+        private final PedidoES[] pedidos;
+        private final AtomicLong cauda = new AtomicLong(); // Próxima posição de escrita
+        private volatile long cabeca;                      // Próxima posição de leitura (só o consumidor avança)
+        private volatile Thread consumidor;                // Estacionado à espera de pedidos (null se não)
+
+        // Capacidade: potência de 2
+        public AnelPedidos(int capacidade) {
+            this.mascara = capacidade - 1;
+            this.sequencias = new long[capacidade];
+            this.pedidos = new PedidoES[capacidade];
+            for (int i = 0; i < capacidade; i++) {
+                sequencias[i] = i;
+            }
+        }
+
+        // Publica o pedido; false se o anel estiver cheio
+        public boolean oferece(PedidoES pedido) {
+            long pos = cauda.get();
+            while (true) {
+                int idx = (int) (pos & mascara);
+                long dif = (long) SEQUENCIA.getAcquire(sequencias, idx) - pos;
+                if (dif == 0) {
+                    if (cauda.compareAndSet(pos, pos + 1)) {
+                        pedidos[idx] = pedido;
+                        // Publica. Volátil (não só release): a leitura de 'consumidor' abaixo não
+                        // pode passar à frente, senão o consumidor estaciona sem ser acordado.
+                        SEQUENCIA.setVolatile(sequencias, idx, pos + 1);
+                        Thread t = consumidor;
+                        if (t != null) {
+                            LockSupport.unpark(t);
+                        }
+                        return true;
+                    }
+                    pos = cauda.get();
+                } else if (dif < 0) {
+                    return false;
+                } else {
+                    pos = cauda.get();
+                }
+            }
+        }
+
+        // Para produtores de outra thread que não o consumidor: cheio, espera ele liberar posição
+        public void publica(PedidoES pedido) {
+            while (!oferece(pedido)) {
+                Thread.onSpinWait();
+            }
+        }
+
+        // Retira o pedido mais antigo; null se não houver nenhum publicado. Só o consumidor chama.
+        public PedidoES retira() {
+            long pos = cabeca;
+            int idx = (int) (pos & mascara);
+            if ((long) SEQUENCIA.getVolatile(sequencias, idx) != pos + 1) { // Par da publicação
+                return null;
+            }
+            PedidoES pedido = pedidos[idx];
+            pedidos[idx] = null;
+            SEQUENCIA.setRelease(sequencias, idx, pos + mascara + 1); // Libera a posição
+            cabeca = pos + 1;
+            return pedido;
+        }
+
+        // Retira o pedido mais antigo, estacionando enquanto o anel estiver vazio
+        public PedidoES espera() {
+            while (true) {
+                PedidoES pedido = retira();
+                if (pedido != null) {
+                    return pedido;
+                }
+                consumidor = Thread.currentThread();
+                pedido = retira(); // Publicado antes de o produtor ver o consumidor?
+                if (pedido == null) {
+                    LockSupport.park(this);
+                }
+                consumidor = null;
+                if (pedido != null) {
+                    return pedido;
+                }
+            }
+        }
+
+        public boolean vazio() {
+            return cauda.get() == cabeca;
+        }
+
+        public int ocupacao() {
+            return (int) Math.max(0, cauda.get() - cabeca);
+        }
+    }
+
+    // ------------------- RECICLADOR -------------------
+    // Pilha de objetos livres para reaproveitar pedidos entre uma E/S e outra. Só pega e devolve
+    // quem está com a CPU (traps, faltas e conclusões); as operações da CLI e do gerador de
+    // carga que liberam recursos também rodam ali (SO.noKernel), então não há sincronização.
+    // Vazia, cria um objeto novo; cheia, descarta o devolvido.
+    public class Reciclador<T> {
+        private final Supplier<T> fabrica;
+        private final Object[] livres;
+        private int n;
+        private long criados, reaproveitados;
+
+        public Reciclador(int capacidade, Supplier<T> _fabrica) {
+            this.livres = new Object[capacidade];
+            this.fabrica = _fabrica;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T pega() {
+            if (n > 0) {
+                reaproveitados++;
+                T t = (T) livres[--n];
+                livres[n] = null;
+                return t;
+            }
+            criados++;
+            return fabrica.get();
+        }
+
+        public void devolve(T t) {
+            if (n < livres.length) {
+                livres[n++] = t;
+            }
+        }
+
+        public String info() {
+            return reaproveitados + " reaproveitados, " + criados + " criados, " + n + " livres";
+        }
+    }
+
+    // ------------------- GERENTE DE PROCESSOS -------------------
+    public class GerenteProcessos {
+        public static final int MAX_PAGINAS_VIRTUAIS = 1 << 20; // Limite para o crescimento via sbrk
+
+        private final Map<Integer, SegmentoCompartilhado> segmentos = new HashMap<>(); // Por chave
+        private final ConcurrentHashMap<Integer, CaixaMensagens> caixas = new ConcurrentHashMap<>(); // Por chave
+        private final Contadores terminados = new Contadores(); // Acumulados dos processos encerrados
+        private long numTerminados;
+
+        // Totais do sistema lidos sem trava (métricas). Só a thread que está com a CPU escreve
+        // (fim de fatia e falta de página), então o incremento não precisa ser atômico; o
+        // volatile publica o valor.
+        public volatile long instrucoesTotais;
+        public volatile long faltasTotais;
+
+        public FilaProntos prontos;
+        public ListaBloqueados bloqueados;
+        public TabelaProcessos tabela;
+        public volatile PCB rodando;
+        private GerenteMemoria gm;
+        private HW hw;
+        private int tamPg;
+        private int tamEspacoVirtual;  // Tamanho mínimo do espaço de endereçamento (palavras); 0 = só a imagem
+        private Utilities utils;
+        private SO so;
+
+        public GerenteProcessos(HW _hw, GerenteMemoria _gm, int _tamPg, Utilities _utils, SO _so) {
+            this.hw = _hw;
+            this.gm = _gm;
+            this.tamPg = _tamPg;
+            this.utils = _utils;
+            this.so = _so;
+            this.prontos = new FilaProntos();
+            this.bloqueados = new ListaBloqueados();
+            this.tabela = new TabelaProcessos();
+            this.rodando = null;
+            this.tamEspacoVirtual = 0;
+        }
+
+        public void setEspacoVirtual(int palavras) {
+            this.tamEspacoVirtual = palavras;
+        }
+
+        public int getEspacoVirtual() {
+            return tamEspacoVirtual;
+        }
+
+        public boolean criaProcesso(Program p) {
+            return criaProcesso(p, null);
+        }
+
+        // entrada: valores que o processo lerá do console antes da fonte compartilhada (null = nenhum)
+        public boolean criaProcesso(Program p, int[] entrada) {
+            if (p == null || p.image == null) {
+                System.out.println("GP: Erro: Programa nulo.");
+                return false;
+            }
+            int nroPalavras = p.image.length;
+            int numPaginas = (int) Math.ceil((double) nroPalavras / tamPg);
+            // Espaço de endereçamento: a imagem ou o espaço virtual configurado, o que for maior.
+            // Páginas além da imagem só ocupam tabela quando tocadas.
+            int numPaginasVirtuais = Math.max(numPaginas, (int) Math.ceil((double) tamEspacoVirtual / tamPg));
+            
+            // LAZY LOADING: Aloca e carrega apenas a página 0
+            int frame = gm.alocaFrame();
+
+            // Aloca a tabela de páginas (esparsa, com numPaginasVirtuais entradas); a imagem é compartilhada via Program
+            PCB pcb = new PCB(tabela.alocaPid(), numPaginasVirtuais, p);
+            pcb.criadoEm = so.agora();
+            
+            int primeiraInvalida = 0;
+            if (frame != -1) {
+                // Inicializa a página 0 como válida
+                pcb.tabelaPaginas.mapeia(0, frame);
+                pcb.tabelaPaginas.setEnderecoDisco(0, 0); // Disco começa no endereço 0
+                gm.ocupaFrame(frame, pcb, 0);
+
+                // Carrega a página 0 na memória
+                carregarPagina(p.image, pcb, 0);
+                primeiraInvalida = 1;
+            } else {
+                // Memória cheia: a página 0 também fica inválida e o primeiro fetch cai na
+                // falta de página, que escolhe uma vítima como para qualquer outra página
+                System.out.println("GP: Memória cheia, a página 0 do programa " + p.name + " virá por falta de página");
+            }
+            
+            // As outras páginas são marcadas como inválidas e seus diskAddresses são calculados
+            for (int i = primeiraInvalida; i < numPaginas; i++) {
+                pcb.tabelaPaginas.setEnderecoDisco(i, i * tamPg); // Cada página tem tamPg palavras
+            }
+
+            pcb.brk = numPaginasVirtuais * tamPg;
+            if (entrada != null) {
+                so.entrada.roteiriza(pcb, entrada);
+            }
+            if (so.porProcesso != null) {
+                so.porProcesso.cria(pcb); // A thread espera estacionada até o processo ficar pronto
+            }
+            pcb.estado = ProcessState.READY;
+            tabela.insere(pcb);
+            prontos.add(pcb);
+            System.out.println("GP: Processo " + pcb.id + " (" + pcb.programa.name + ") criado com " + numPaginas + " páginas (lazy loading)"
+                    + (numPaginasVirtuais > numPaginas ? ", espaço virtual de " + numPaginasVirtuais + " páginas." : "."));
+            
+            // Se for o primeiro processo, libera o escalonador
+            if (rodando == null && prontos.size() == 1) {
+                so.liberaEscalonador();
+            }
+            return true;
+        }
+
+        private void carregarPagina(Word[] programa, PCB pcb, int pagina) {
+            int frame = TabelaPaginas.frame(pcb.tabelaPaginas.get(pagina));
+            int endFisicoBase = frame * tamPg;
+            int endLogicoBase = pagina * tamPg;
+
+            for (int offset = 0; offset < tamPg; offset++) {
+                int endLogico = endLogicoBase + offset;
+                int endFisico = endFisicoBase + offset;
+
+                if (endLogico < programa.length) {
+                    hw.mem.pos[endFisico] = new Word(programa[endLogico].opc, programa[endLogico].ra, programa[endLogico].rb, programa[endLogico].p);
+                } else {
+                    // Preenche com zeros se a página não estiver completamente preenchida
+                    hw.mem.pos[endFisico] = new Word(Opcode.___, -1, -1, 0);
+                }
+            }
+            System.out.println("GP: Página " + pagina + " do processo " + pcb.id + " carregada no frame " + frame);
+        }
+
+        public void desalocaProcesso(int id) {
+            PCB pcb = tabela.busca(id);
+            // Retrato antes de liberar o pid e de sair das filas, para contar o estado corrente
+            Contadores c = pcb == null ? null : retrato(pcb);
+            if (pcb == null || tabela.remove(id) != pcb) {
+                System.out.println("GP: Processo " + id + " não encontrado.");
+                return;
+            }
+            acumulaTerminado(c);
+
+            if (rodando == pcb) {
+                rodando = null;
+                hw.cpu.processoRemovido();
+                System.out.println("GP: Desalocando processo rodando " + id);
+                so.liberaEscalonador(); // CPU ficou livre
+            } else if (prontos.remove(pcb)) {
+                System.out.println("GP: Desalocando processo da fila " + id);
+            } else if (bloqueados.remove(pcb)) {
+                System.out.println("GP: Desalocando processo bloqueado " + id);
+            }
+            
+            // Cancela o sleep e as faltas à espera de frame, desanexa os segmentos compartilhados
+            // e desaloca as páginas. Frames com carga em andamento ainda não são válidos: ficam
+            // para handleFimCargaDiscoVM, que os libera ao ver o processo terminado.
+            so.temporizadores.cancela(pcb);
+            so.filaPageFaultPendentes.removeProcesso(pcb);
+            desanexaTodos(pcb);
+            TabelaPaginas tabelaPcb = pcb.tabelaPaginas;
+            for (int i = tabelaPcb.proximaPagina(0); i != -1; i = tabelaPcb.proximaPagina(i + 1)) {
+                liberaPagina(pcb, i);
+            }
+            
+            pcb.estado = ProcessState.TERMINATED;
+            if (pcb.executor != null) {
+                LockSupport.unpark(pcb.executor); // A thread do processo termina
+            }
+            System.out.println("GP: Processo " + id + " desalocado.");
+        }
+
+        // Libera o frame e o slot de swap de uma página do processo
+        private void liberaPagina(PCB pcb, int pagina) {
+            long entrada = pcb.tabelaPaginas.get(pagina);
+            if (TabelaPaginas.valida(entrada)) {
+                int n = TabelaPaginas.huge(entrada) ? TabelaPaginas.PAGINAS_POR_HUGE : 1;
+                for (int i = 0; i < n; i++) {
+                    gm.liberaFrame(TabelaPaginas.frame(entrada) + i);
+                }
+            }
+            if (TabelaPaginas.emSwap(entrada)) {
+                hw.swap.liberaSlot(TabelaPaginas.enderecoDisco(entrada));
+            }
+        }
+
+        // Estende (ou reduz) o espaço de endereçamento do processo. As páginas novas são
+        // demand-zero: não ocupam frame nem disco até o primeiro acesso.
+        // Retorna o break anterior, ou -1 se o novo tamanho for inválido.
+        public int sbrk(PCB pcb, int incremento) {
+            int anterior = pcb.brk;
+            long novo = (long) anterior + incremento;
+            if (novo < pcb.programa.image.length || novo > (long) MAX_PAGINAS_VIRTUAIS * tamPg) {
+                return -1;
+            }
+            int paginas = (int) ((novo + tamPg - 1) / tamPg);
+            TabelaPaginas t = pcb.tabelaPaginas;
+            if (paginas < t.tamanho()) {
+                // Segmentos compartilhados só saem por shmdt
+                for (int i = t.proximaPagina(paginas); i != -1; i = t.proximaPagina(i + 1)) {
+                    if (TabelaPaginas.compartilhada(t.get(i))) {
+                        return -1;
+                    }
+                }
+                // Huge page cortada pelo novo limite vira páginas comuns
+                t.divideHuge(TabelaPaginas.cabecaHuge(paginas));
+                for (int i = t.proximaPagina(paginas); i != -1; i = t.proximaPagina(i + 1)) {
+                    liberaPagina(pcb, i);
+                    t.limpa(i);
+                }
+            }
+            t.redimensiona(paginas);
+            pcb.brk = (int) novo;
+            return anterior;
+        }
+
+        // Contabiliza a fatia que o processo acabou de usar na CPU (instruções, vruntime e tempo)
+        public void contabilizaFatia(PCB pcb) {
+            int executadas = hw.cpu.getInstrucoesExecutadas();
+            pcb.instrucoesExecutadas += executadas;
+            pcb.vruntime += (long) executadas * FilaProntos.PESO_BASE / pcb.peso;
+            instrucoesTotais += executadas;
+            long agora = so.agora();
+            tabela.conta(pcb, Contadores.RODANDO_NS, agora - pcb.naCPUDesde);
+            pcb.naCPUDesde = agora;
+        }
+
+        public void nice(int id, int peso) {
+            if (peso <= 0) {
+                System.out.println("GP: Erro: Peso deve ser positivo.");
+                return;
+            }
+            PCB pcb = tabela.busca(id);
+            if (pcb == null) {
+                System.out.println("GP: Processo " + id + " não encontrado.");
+                return;
+            }
+            pcb.peso = peso;
+            prontos.atualiza(pcb);
+            System.out.println("GP: Processo " + id + " agora tem peso " + peso + ".");
+        }
+
+        // Cria (ou localiza) o segmento compartilhado 'chave' com pelo menos 'tamanho' palavras.
+        // Retorna a chave, ou -1 se faltar memória ou o segmento existente for menor.
+        public synchronized int shmget(int chave, int tamanho) {
+            SegmentoCompartilhado seg = segmentos.get(chave);
+            if (seg != null) {
+                return (!seg.removido && seg.frames.length * tamPg >= tamanho) ? chave : -1;
+            }
+            if (tamanho <= 0) {
+                return -1;
+            }
+            int[] frames = new int[(tamanho + tamPg - 1) / tamPg];
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = gm.alocaFrameFixo();
+                if (frames[i] == -1) {
+                    for (int j = 0; j < i; j++) {
+                        gm.liberaFrame(frames[j]);
+                    }
+                    return -1;
+                }
+                for (int k = frames[i] * tamPg; k < (frames[i] + 1) * tamPg; k++) {
+                    Word w = hw.mem.pos[k];
+                    w.opc = Opcode.___;
+                    w.ra = -1;
+                    w.rb = -1;
+                    w.p = 0;
+                }
+            }
+            segmentos.put(chave, new SegmentoCompartilhado(chave, frames));
+            System.out.println("GP: Segmento compartilhado " + chave + " criado com " + frames.length + " páginas.");
+            return chave;
+        }
+
+        // Mapeia o segmento no fim do espaço do processo (alinhado à página).
+        // Retorna o endereço lógico base, ou -1.
+        public synchronized int shmat(PCB pcb, int chave) {
+            SegmentoCompartilhado seg = segmentos.get(chave);
+            if (seg == null || seg.removido) {
+                return -1;
+            }
+            int base = (pcb.brk + tamPg - 1) / tamPg;
+            int fim = base + seg.frames.length;
+            if (fim > MAX_PAGINAS_VIRTUAIS) {
+                return -1;
+            }
+            TabelaPaginas t = pcb.tabelaPaginas;
+            t.redimensiona(fim);
+            for (int i = 0; i < seg.frames.length; i++) {
+                gm.compartilhaFrame(seg.frames[i]);
+                t.mapeia(base + i, seg.frames[i]);
+                t.ligaBits(base + i, TabelaPaginas.BIT_COMPARTILHADA);
+            }
+            pcb.brk = fim * tamPg;
+            if (pcb.segmentosAnexados == null) {
+                pcb.segmentosAnexados = new ArrayList<>();
+            }
+            pcb.segmentosAnexados.add(new int[] { chave, base });
+            seg.anexos++;
+            return base * tamPg;
+        }
+
+        // Desanexa o segmento mapeado no endereço base informado. Retorna 0, ou -1.
+        public synchronized int shmdt(PCB pcb, int endereco) {
+            if (pcb.segmentosAnexados != null) {
+                for (int[] anexo : pcb.segmentosAnexados) {
+                    if (anexo[1] * tamPg == endereco) {
+                        desanexa(pcb, anexo);
+                        return 0;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        private synchronized void desanexaTodos(PCB pcb) {
+            while (pcb.segmentosAnexados != null && !pcb.segmentosAnexados.isEmpty()) {
+                desanexa(pcb, pcb.segmentosAnexados.get(0));
+            }
+        }
+
+        private void desanexa(PCB pcb, int[] anexo) {
+            SegmentoCompartilhado seg = segmentos.get(anexo[0]);
+            for (int i = 0; i < seg.frames.length; i++) {
+                liberaPagina(pcb, anexo[1] + i); // Solta a referência do processo ao frame
+                pcb.tabelaPaginas.limpa(anexo[1] + i);
+            }
+            pcb.segmentosAnexados.remove(anexo);
+            seg.anexos--;
+            if (seg.removido && seg.anexos == 0) {
+                destroi(seg);
+            }
+        }
+
+        private void destroi(SegmentoCompartilhado seg) {
+            for (int frame : seg.frames) {
+                gm.liberaFrame(frame);
+            }
+            segmentos.remove(seg.chave);
+            System.out.println("GP: Segmento compartilhado " + seg.chave + " destruído.");
+        }
+
+        // Marca o segmento para remoção (destruído quando não houver processos anexados)
+        public synchronized void shmrm(int chave) {
+            SegmentoCompartilhado seg = segmentos.get(chave);
+            if (seg == null) {
+                System.out.println("GP: Segmento " + chave + " não encontrado.");
+                return;
+            }
+            seg.removido = true;
+            if (seg.anexos == 0) {
+                destroi(seg);
+            } else {
+                System.out.println("GP: Segmento " + chave + " será destruído após " + seg.anexos + " desanexações.");
+            }
+        }
+
+        public synchronized void shm() {
+            System.out.println("=== SEGMENTOS COMPARTILHADOS ===");
+            if (segmentos.isEmpty()) {
+                System.out.println("Nenhum segmento.");
+                return;
+            }
+            System.out.println("Chave\tPáginas\tAnexos\tFrames");
+            for (SegmentoCompartilhado seg : segmentos.values()) {
+                System.out.println(seg.chave + "\t" + seg.frames.length + "\t" + seg.anexos
+                        + (seg.removido ? " (removido)" : "") + "\t" + Arrays.toString(seg.frames));
+            }
+        }
+
+        // Caixa de mensagens da chave, criada no primeiro uso. A busca simples vem antes:
+        // computeIfAbsent só no primeiro uso, em vez de a cada send/receive. As chaves são
+        // limitadas, pois cada caixa aloca os buffers de todas as posições e nunca é
+        // liberada; null se a chave estiver fora da faixa.
+        public CaixaMensagens caixa(int chave) {
+            if (chave < 0 || chave >= CaixaMensagens.MAX_CAIXAS) {
+                return null;
+            }
+            CaixaMensagens caixa = caixas.get(chave);
+            if (caixa == null) {
+                caixa = caixas.computeIfAbsent(chave, CaixaMensagens::new);
+            }
+            return caixa;
+        }
+
+        public void mbox() {
+            System.out.println("=== CAIXAS DE MENSAGENS ===");
+            if (caixas.isEmpty()) {
+                System.out.println("Nenhuma caixa.");
+                return;
+            }
+            System.out.println("Chave\tOcup.\tEnviadas\tRecebidas\tPalavras\tCheia\tBloqueios\tMsg/s");
+            for (CaixaMensagens c : caixas.values()) {
+                System.out.println(c.estatisticas());
+            }
+        }
+
+        // Liga/desliga huge pages para todo o espaço do processo (vale para as próximas faltas)
+        public void huge(int id, boolean ligado) {
+            PCB pcb = tabela.busca(id);
+            if (pcb == null) {
+                System.out.println("GP: Processo " + id + " não encontrado.");
+                return;
+            }
+            pcb.tabelaPaginas.setHuge(ligado);
+            System.out.println("GP: Huge pages " + (ligado ? "ligadas" : "desligadas") + " para o processo " + id + ".");
+        }
+
+        // Relatório de fatia de CPU real (instruções) versus alvo (peso) dos processos ativos
+        public void share() {
+            List<PCB> ativos = new ArrayList<>();
+            for (PCB p : tabela) {
+                ativos.add(p);
+            }
+            if (ativos.isEmpty()) {
+                System.out.println("Nenhum processo ativo.");
+                return;
+            }
+            long somaPesos = 0;
+            long somaInstrucoes = 0;
+            for (PCB p : ativos) {
+                somaPesos += p.peso;
+                somaInstrucoes += p.instrucoesExecutadas;
+            }
+            System.out.println("=== FATIA DE CPU POR PROCESSO ===");
+            System.out.println("ID\tPeso\tInstr\tVruntime\tAlvo\tReal\tPrograma");
+            for (PCB p : ativos) {
+                double alvo = 100.0 * p.peso / somaPesos;
+                double real = somaInstrucoes == 0 ? 0.0 : 100.0 * p.instrucoesExecutadas / somaInstrucoes;
+                System.out.println(p.id + "\t" + p.peso + "\t" + p.instrucoesExecutadas + "\t" + p.vruntime + "\t\t"
+                        + String.format("%.1f%%", alvo) + "\t" + String.format("%.1f%%", real) + "\t" + p.programa.name);
+            }
+        }
+
+        // Salva o contexto do processo que está deixando a CPU (pc, registradores e fatia usada)
+        public void salvaContexto(PCB pcb) {
+            pcb.pc = hw.cpu.getPc();
+            tabela.salvaRegistradores(pcb.id, hw.cpu.getReg());
+            contabilizaFatia(pcb);
+        }
+
+        // Cópia dos contadores do processo, incluindo as instruções e o tempo no estado corrente
+        public Contadores retrato(PCB p) {
+            Contadores c = new Contadores();
+            tabela.leContadores(p, c);
+            c.instrucoes = p.instrucoesExecutadas;
+            long agora = so.agora();
+            if (rodando == p) {
+                c.rodandoNs += agora - p.naCPUDesde;
+            } else if (p.indiceHeap >= 0) {
+                c.prontoNs += agora - p.prontoDesde;
+            } else if (p.naListaBloqueados) {
+                c.bloqueadoNs += agora - p.bloqueadoDesde;
+            }
+            return c;
+        }
+
+        // Soma dos contadores dos processos que já terminaram
+        private void acumulaTerminado(Contadores c) {
+            synchronized (terminados) {
+                terminados.soma(c);
+                numTerminados++;
+            }
+        }
+
+        public void stats() {
+            System.out.println("=== ESTATÍSTICAS ===");
+            System.out.println("ID\tInstr.\tTrocas\tQuanta\tFaltas\tMaiores\tDespejos\tGravadas\tSyscalls\tPronto(ms)\tRodando(ms)\tBloq.(ms)\tPrograma");
+            Contadores total = new Contadores();
+            int vivos = 0;
+            for (PCB p : tabela) {
+                Contadores c = retrato(p);
+                System.out.println(p.id + "\t" + linhaStats(c) + "\t" + p.programa.name);
+                total.soma(c);
+                vivos++;
+            }
+            long mortos;
+            synchronized (terminados) {
+                total.soma(terminados);
+                mortos = numTerminados;
+            }
+            System.out.println("Total\t" + linhaStats(total) + "\t(" + vivos + " ativo(s), " + mortos + " terminado(s))");
+            System.out.println("Chamadas: " + resumoChamadas(total));
+        }
+
+        public void stats(int id) {
+            PCB pcb = tabela.busca(id);
+            if (pcb == null) {
+                System.out.println("GP: Processo " + id + " não encontrado.");
+                return;
+            }
+            Contadores c = retrato(pcb);
+            System.out.println("=== ESTATÍSTICAS DO PROCESSO " + id + " (" + pcb.programa.name + ", " + pcb.estado + ") ===");
+            System.out.println("Instruções: " + c.instrucoes + " | trocas de contexto: " + c.trocasContexto + " | quanta esgotados: " + c.quanta);
+            System.out.println("Faltas de página: " + c.faltas() + " (" + c.faltasMaiores + " maiores, " + c.faltasMenores + " menores)"
+                    + " | despejos: " + c.despejos + " (" + c.gravacoes + " gravados no swap)");
+            System.out.println(String.format(Locale.ROOT, "Tempo: pronto %.1f ms | rodando %.1f ms | bloqueado %.1f ms",
+                    c.prontoNs / 1e6, c.rodandoNs / 1e6, c.bloqueadoNs / 1e6));
+            System.out.println("Chamadas: " + resumoChamadas(c));
+        }
+
+        // Grava os contadores em TSV: um processo ativo por linha, depois os terminados e o total
+        public void gravaStats(String arquivo) {
+            StringBuilder cab = new StringBuilder("processo\tprograma\tinstrucoes\ttrocas\tquanta\tfaltas_maiores\tfaltas_menores"
+                    + "\tdespejos\tgravacoes\tpronto_ms\trodando_ms\tbloqueado_ms");
+            for (String nome : Contadores.CHAMADAS) {
+                cab.append("\tsys_").append(nome.equals("inválida") ? "invalida" : nome);
+            }
+            try (PrintStream out = new PrintStream(arquivo, "UTF-8")) {
+                out.println(cab);
+                Contadores total = new Contadores();
+                int linhas = 0;
+                for (PCB p : tabela) {
+                    Contadores c = retrato(p);
+                    out.println(p.id + "\t" + p.programa.name + "\t" + linhaTsv(c));
+                    total.soma(c);
+                    linhas++;
+                }
+                synchronized (terminados) {
+                    out.println("terminados\t-\t" + linhaTsv(terminados));
+                    total.soma(terminados);
+                }
+                out.println("total\t-\t" + linhaTsv(total));
+                System.out.println("GP: Estatísticas de " + linhas + " processo(s) ativo(s) gravadas em " + arquivo + ".");
+            } catch (IOException e) {
+                System.out.println("Erro: Não foi possível gravar '" + arquivo + "'.");
+            }
+        }
+
+        private String linhaStats(Contadores c) {
+            return c.instrucoes + "\t" + c.trocasContexto + "\t" + c.quanta + "\t" + c.faltas() + "\t" + c.faltasMaiores
+                    + "\t" + c.despejos + "\t\t" + c.gravacoes + "\t\t" + c.totalChamadas()
+                    + String.format(Locale.ROOT, "\t\t%.1f\t\t%.1f\t\t%.1f", c.prontoNs / 1e6, c.rodandoNs / 1e6, c.bloqueadoNs / 1e6);
+        }
+
+        private String linhaTsv(Contadores c) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(c.instrucoes).append('\t').append(c.trocasContexto).append('\t').append(c.quanta)
+              .append('\t').append(c.faltasMaiores).append('\t').append(c.faltasMenores)
+              .append('\t').append(c.despejos).append('\t').append(c.gravacoes)
+              .append(String.format(Locale.ROOT, "\t%.3f\t%.3f\t%.3f", c.prontoNs / 1e6, c.rodandoNs / 1e6, c.bloqueadoNs / 1e6));
+            for (long n : c.chamadas) {
+                sb.append('\t').append(n);
+            }
+            return sb.toString();
+        }
+
+        private String resumoChamadas(Contadores c) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 1; i <= c.chamadas.length; i++) {
+                int k = i % c.chamadas.length; // Inválidas por último
+                if (c.chamadas[k] > 0) {
+                    sb.append(sb.length() == 0 ? "" : ", ").append(Contadores.CHAMADAS[k]).append(' ').append(c.chamadas[k]);
+                }
+            }
+            return sb.length() == 0 ? "nenhuma" : sb.toString();
+        }
+
+        public void ps() {
+            System.out.println("=== LISTA DE PROCESSOS ===");
+            System.out.println("ID\tEstado\t\tPrograma");
+            for (PCB p : tabela) {
+                System.out.println(p.id + "\t" + p.estado + "\t\t" + p.programa.name);
+            }
+            if (tabela.size() == 0) {
+                System.out.println("Nenhum processo ativo.");
+            }
+        }
+
+        public void dump(int id) {
+            PCB pcb = tabela.busca(id);
+            if (pcb == null) {
+                System.out.println("GP: Processo " + id + " não encontrado.");
+                return;
+            }
+            System.out.println("=== DUMP DO PROCESSO " + id + " (" + pcb.programa.name + ") ===");
+            System.out.println("PC: " + pcb.pc);
+            System.out.println("Estado: " + pcb.estado);
+            System.out.println("Registradores:");
+            for (int i = 0; i < TabelaProcessos.NUM_REGS; i++) {
+                System.out.println("  r[" + i + "]: " + tabela.leRegistrador(pcb.id, i));
+            }
+            System.out.println("Tabela de Páginas:");
+            System.out.println("  (" + pcb.tabelaPaginas.tamanho() + " páginas virtuais, "
+                    + pcb.tabelaPaginas.tabelasAlocadas() + " tabelas de segundo nível alocadas)");
+            for (int i = pcb.tabelaPaginas.proximaPagina(0); i != -1; i = pcb.tabelaPaginas.proximaPagina(i + 1)) {
+                PageTableEntry entry = pcb.tabelaPaginas.entrada(i);
+                System.out.println("  Página " + i + " -> Frame " + entry.frameNumber() + 
+                                 " [V:" + entry.validBit() + " D:" + entry.dirtyBit() + 
+                                 " R:" + entry.referencedBit() + " RO:" + entry.readOnlyBit() +
+                                 " S:" + entry.swapBit() + " H:" + entry.hugeBit() + " C:" + entry.sharedBit() +
+                                 " Disk:" + entry.diskAddress() + "]");
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+    // --------------------- H A R D W A R E - definicoes de HW
+    // ----------------------------------------------
+
+    public class Memory {
+        public Word[] pos; // pos[i] é a posição i da memória. cada posição é uma palavra.
+
+        public Memory(int size) {
+            pos = new Word[size];
+            for (int i = 0; i < pos.length; i++) {
+                pos[i] = new Word(Opcode.___, -1, -1, -1);
+            }
+        }
+    }
+
+    public class Word {
+        public Opcode opc;
+        public int ra;
+        public int rb;
+        public int p;
+
+        public Word(Opcode _opc, int _ra, int _rb, int _p) {
+            opc = _opc;
+            ra = _ra;
+            rb = _rb;
+            p  = _p;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+    // --------------------- C P U - definicoes da CPU
+    // -----------------------------------------------------
+
+    public enum Opcode {
+        DATA, ___, JMP, JMPI, JMPIG, JMPIL, JMPIE, JMPIM, JMPIGM, JMPILM, JMPIEM,
+        JMPIGK, JMPILK, JMPIEK, JMPIGT, ADDI, SUBI, ADD, SUB, MULT,
+        LDI, LDD, STD, LDX, STX, MOVE, SYSCALL, STOP
+    }
+
+    public enum Interrupts {
+        noInterrupt, intEnderecoInvalido, intInstrucaoInvalida, intOverflow, 
+        intFimDeFatiaDeTempo, intDispositivo, intPageFault, intRelogio;
+    }
+
+    // ------------------- GERENTE DE MEMÓRIA COM PAGINAÇÃO E VITIMIZAÇÃO -------------------
+    public class GerenteMemoria {
+        private boolean[] framesOcupados;
+        private volatile int numFramesLivres; // volatile: lido sem trava pelas métricas
+        private int tamPg;
+        private PCB[] donoFrame;   // Frame -> processo cuja página ocupa o frame (null se nenhum)
+        private int[] paginaFrame; // Frame -> página do processo dono
+
+        // FIFO de substituição: lista duplamente encadeada intrusiva sobre vetores indexados pelo
+        // frame (como a lista de bloqueados nos PCBs). Mover um frame para o fim custa O(1) e
+        // não cria nós.
+        private int[] anteriorFifo;
+        private int[] proximoFifo;
+        private boolean[] naFifo;
+        private int inicioFifo = -1;
+        private int fimFifo = -1;
+        private int tamanhoFifo;
+
+        private int[] referencias; // Quantas tabelas de páginas (ou segmentos) usam cada frame
+
+        // Contadores de huge pages
+        public long hugeAlocadas;  // Faltas atendidas com uma huge page
+        public long hugeFallbacks; // Faltas elegíveis sem bloco alinhado livre (viraram página comum)
+        public long hugeDivididas; // Huge pages divididas para despejar um de seus frames
+
+        public GerenteMemoria(int tamMem, int tamPg) {
+            int numFrames = tamMem / tamPg;
+            this.tamPg = tamPg;
+            this.framesOcupados = new boolean[numFrames];
+            Arrays.fill(this.framesOcupados, false);
+            this.referencias = new int[numFrames];
+            this.numFramesLivres = numFrames;
+            this.donoFrame = new PCB[numFrames];
+            this.paginaFrame = new int[numFrames];
+            this.anteriorFifo = new int[numFrames];
+            this.proximoFifo = new int[numFrames];
+            this.naFifo = new boolean[numFrames];
+            
+            // Inicializa a fila FIFO com todos os frames
+            for (int i = 0; i < numFrames; i++) {
+                fifoAdiciona(i);
+            }
+        }
+
+        private void fifoAdiciona(int frame) {
+            anteriorFifo[frame] = fimFifo;
+            proximoFifo[frame] = -1;
+            if (fimFifo == -1) {
+                inicioFifo = frame;
+            } else {
+                proximoFifo[fimFifo] = frame;
+            }
+            fimFifo = frame;
+            naFifo[frame] = true;
+            tamanhoFifo++;
+        }
+
+        private void fifoRemove(int frame) {
+            if (!naFifo[frame]) {
+                return;
+            }
+            int ant = anteriorFifo[frame];
+            int prox = proximoFifo[frame];
+            if (ant == -1) {
+                inicioFifo = prox;
+            } else {
+                proximoFifo[ant] = prox;
+            }
+            if (prox == -1) {
+                fimFifo = ant;
+            } else {
+                anteriorFifo[prox] = ant;
+            }
+            naFifo[frame] = false;
+            tamanhoFifo--;
+        }
+
+        // Coloca o frame no fim da fila (mais recente)
+        private void fifoMoveParaFim(int frame) {
+            fifoRemove(frame);
+            fifoAdiciona(frame);
+        }
+
+        public int alocaFrame() {
+            if (numFramesLivres > 0) {
+                for (int i = 0; i < framesOcupados.length; i++) {
+                    if (!framesOcupados[i]) {
+                        framesOcupados[i] = true;
+                        referencias[i] = 1;
+                        numFramesLivres--;
+                        fifoMoveParaFim(i);
+                        return i;
+                    }
+                }
+            }
+            return -1; // Sem frames livres
+        }
+
+        // Aloca um frame livre fora da FIFO (nunca é escolhido como vítima); -1 se não houver
+        public int alocaFrameFixo() {
+            int frame = alocaFrame();
+            if (frame != -1) {
+                fifoRemove(frame);
+            }
+            return frame;
+        }
+
+        // Mais uma tabela de páginas passa a mapear o frame
+        public void compartilhaFrame(int frame) {
+            referencias[frame]++;
+        }
+
+        // Aloca n frames livres contíguos, alinhados a n; -1 se a memória estiver fragmentada
+        public int alocaBloco(int n) {
+            if (numFramesLivres < n) {
+                return -1;
+            }
+            for (int base = 0; base + n <= framesOcupados.length; base += n) {
+                boolean livre = true;
+                for (int i = 0; i < n && livre; i++) {
+                    livre = !framesOcupados[base + i];
+                }
+                if (livre) {
+                    for (int i = 0; i < n; i++) {
+                        framesOcupados[base + i] = true;
+                        referencias[base + i] = 1;
+                    }
+                    numFramesLivres -= n;
+                    return base;
+                }
+            }
+            return -1;
+        }
+
+        // Solta uma referência ao frame; ele só fica livre quando ninguém mais o usa
+        public void liberaFrame(int frame) {
+            if (frame >= 0 && frame < framesOcupados.length && framesOcupados[frame]) {
+                if (referencias[frame] > 1) {
+                    referencias[frame]--;
+                    return;
+                }
+                referencias[frame] = 0;
+                framesOcupados[frame] = false;
+                numFramesLivres++;
+                donoFrame[frame] = null;
+                // Não precisa remover/adicionar na FIFO pois será recolocado quando realocado
+            }
+        }
+
+        public void ocupaFrame(int frame, PCB pcb, int pageNumber) {
+            if (frame >= 0 && frame < framesOcupados.length) {
+                if (!framesOcupados[frame]) { // alocaFrame pode já ter marcado o frame
+                    framesOcupados[frame] = true;
+                    numFramesLivres--;
+                }
+                referencias[frame] = 1;
+                donoFrame[frame] = pcb;
+                paginaFrame[frame] = pageNumber;
+                fifoMoveParaFim(frame);
+            }
+        }
+
+        // Segunda chance sobre a FIFO: a página mais antiga sem o bit R é a vítima; a que tem R
+        // perde o bit e vai para o fim da fila, e só sai se não for tocada até a próxima volta.
+        // Cada bit limpo foi ligado por um acesso, então a escolha custa O(1) amortizado.
+        // Frames com carga em andamento (página associada mas não válida) também vão para o
+        // fim. -1 se nenhum servir (todos em carga).
+        public int escolheVitima() {
+            // Duas voltas bastam: na primeira todos os bits R podem ser limpos
+            for (int n = 2 * tamanhoFifo; n > 0; n--) {
+                int frame = inicioFifo;
+                PCB ocupante = donoFrame[frame];
+                if (ocupante == null) {
+                    fifoRemove(frame);
+                    return frame;
+                }
+                TabelaPaginas t = ocupante.tabelaPaginas;
+                int pagina = t.resolve(paginaFrame[frame]);
+                if (pagina != -1) {
+                    if (!TabelaPaginas.referenciada(t.get(pagina))) {
+                        fifoRemove(frame);
+                        return frame;
+                    }
+                    t.desligaBits(pagina, TabelaPaginas.BIT_REFERENCIADO);
+                }
+                fifoMoveParaFim(frame);
+            }
+            return -1;
+        }
+
+        // Processo dono da página no frame (null se nenhum) e a página correspondente
+        public PCB donoDoFrame(int frame) {
+            return donoFrame[frame];
+        }
+
+        public int paginaDoFrame(int frame) {
+            return paginaFrame[frame];
+        }
+
+        public int getNumFramesLivres() {
+            return numFramesLivres;
+        }
+
+        public int getNumFrames() {
+            return framesOcupados.length;
+        }
+    }
+
+    // ------------------- CAIXA DE MENSAGENS -------------------
+    // Fila circular limitada e sem locks (MPMC, com um número de sequência por posição):
+    // produtores e consumidores disputam apenas as posições cauda/cabeça via compareAndSet,
+    // e a sequência da posição publica a mensagem. Cada posição tem o seu buffer de
+    // MAX_PALAVRAS, alocado com a caixa: o remetente reserva a posição, copia a mensagem
+    // direto para ela e publica; o receptor copia para fora e libera. Receptores bloqueados
+    // esperam numa fila também sem locks e são acordados pelo remetente.
+    public class CaixaMensagens {
+        public static final int CAPACIDADE = 16;   // Mensagens (potência de 2)
+        public static final int MAX_PALAVRAS = 256; // Tamanho máximo de uma mensagem
+        public static final int MAX_CAIXAS = 256;   // Chaves válidas: 0 a MAX_CAIXAS - 1
+
+        private static final VarHandle SEQUENCIA = MethodHandles.arrayElementVarHandle(long[].class);
+
+        private final int chave;
+        private final long[] sequencias = new long[CAPACIDADE];
+        private final int[][] mensagens = new int[CAPACIDADE][MAX_PALAVRAS];
+        private final int[] tamanhos = new int[CAPACIDADE];
+        private final AtomicLong cauda = new AtomicLong();  // Próxima posição de escrita
+        private final AtomicLong cabeca = new AtomicLong(); // Próxima posição de leitura
+        private final ConcurrentLinkedQueue<PCB> receptores = new ConcurrentLinkedQueue<>();
+
+        // Estatísticas (vazão)
+        private final long criacao = System.nanoTime();
+        private final AtomicLong enviadas = new AtomicLong();
+        private final AtomicLong recebidas = new AtomicLong();
+        private final AtomicLong palavras = new AtomicLong();
+        private final AtomicLong recusadas = new AtomicLong(); // send com a caixa cheia
+        private final AtomicLong bloqueios = new AtomicLong(); // receive com a caixa vazia
+
+        public CaixaMensagens(int _chave) {
+            this.chave = _chave;
+            for (int i = 0; i < CAPACIDADE; i++) {
+                sequencias[i] = i;
+            }
+        }
+
+        // Reserva a próxima posição de escrita; -1 se a caixa estiver cheia. O remetente
+        // escreve em buffer(pos) e chama publica(pos, tamanho).
+        public long reserva() {
+            long pos = cauda.get();
+            while (true) {
+                int idx = (int) (pos & (CAPACIDADE - 1));
+                long dif = (long) SEQUENCIA.getAcquire(sequencias, idx) - pos;
+                if (dif == 0) {
+                    if (cauda.compareAndSet(pos, pos + 1)) {
+                        return pos;
+                    }
+                    pos = cauda.get();
+                } else if (dif < 0) {
+                    recusadas.incrementAndGet();
+                    return -1;
+                } else {
+                    pos = cauda.get();
+                }
+            }
+        }
+
+        public void publica(long pos, int tamanho) {
+            int idx = (int) (pos & (CAPACIDADE - 1));
+            tamanhos[idx] = tamanho;
+            SEQUENCIA.setRelease(sequencias, idx, pos + 1);
+            enviadas.incrementAndGet();
+            palavras.addAndGet(tamanho);
+        }
+
+        // Reserva a mensagem mais antiga para leitura; -1 se a caixa estiver vazia. O receptor
+        // lê buffer(pos) e tamanho(pos) e chama libera(pos).
+        public long retira() {
+            long pos = cabeca.get();
+            while (true) {
+                int idx = (int) (pos & (CAPACIDADE - 1));
+                long dif = (long) SEQUENCIA.getAcquire(sequencias, idx) - (pos + 1);
+                if (dif == 0) {
+                    if (cabeca.compareAndSet(pos, pos + 1)) {
+                        return pos;
+                    }
+                    pos = cabeca.get();
+                } else if (dif < 0) {
+                    return -1;
+                } else {
+                    pos = cabeca.get();
+                }
+            }
+        }
+
+        public void libera(long pos) {
+            int idx = (int) (pos & (CAPACIDADE - 1));
+            SEQUENCIA.setRelease(sequencias, idx, pos + CAPACIDADE); // Libera a posição
+            recebidas.incrementAndGet();
+        }
+
+        public int[] buffer(long pos) {
+            return mensagens[(int) (pos & (CAPACIDADE - 1))];
+        }
+
+        public int tamanho(long pos) {
+            return tamanhos[(int) (pos & (CAPACIDADE - 1))];
+        }
+
+        public int ocupacao() {
+            return (int) Math.max(0, cauda.get() - cabeca.get());
+        }
+
+        // Registra o receptor para ser acordado. Retorna false se chegou mensagem nesse meio
+        // tempo (o registro é desfeito e o receptor deve tentar retirar de novo).
+        public boolean aguarda(PCB pcb) {
+            receptores.add(pcb);
+            if (ocupacao() > 0 && receptores.remove(pcb)) {
+                return false;
+            }
+            bloqueios.incrementAndGet();
+            return true;
+        }
+
+        // Próximo receptor ainda vivo à espera (null se nenhum)
+        public PCB proximoReceptor() {
+            PCB pcb = receptores.poll();
+            while (pcb != null && pcb.estado == ProcessState.TERMINATED) {
+                pcb = receptores.poll();
+            }
+            return pcb;
+        }
+
+        public String estatisticas() {
+            double segundos = (System.nanoTime() - criacao) / 1e9;
+            return chave + "\t" + ocupacao() + "/" + CAPACIDADE + "\t" + enviadas.get() + "\t" + recebidas.get()
+                    + "\t" + palavras.get() + "\t" + recusadas.get() + "\t" + bloqueios.get()
+                    + "\t" + String.format("%.1f", segundos == 0 ? 0.0 : enviadas.get() / segundos);
+        }
+    }
+
+    // ------------------- SEGMENTO DE MEMÓRIA COMPARTILHADA -------------------
+    // Frames fixos (fora da FIFO de vitimização), zerados na criação. Cada processo anexado
+    // soma uma referência em cada frame; o segmento também mantém a sua até ser destruído.
+    public class SegmentoCompartilhado {
+        public int chave;
+        public int[] frames;
+        public int anexos;        // Processos anexados
+        public boolean removido;  // shm rm: destruído quando o último processo desanexar
+
+        public SegmentoCompartilhado(int _chave, int[] _frames) {
+            this.chave = _chave;
+            this.frames = _frames;
+            this.anexos = 0;
+            this.removido = false;
+        }
+    }
+
+    public class CPU {
+        private int maxInt;
+        private int minInt;
+        private int pc;
+        private Word ir;
+        private int[] reg;
+        private Interrupts irpt;
+        private Word[] m;
+        private InterruptHandling ih;
+        private SysCallHandling sysCall;
+        private boolean cpuStop;
+        private boolean debug;
+        private Utilities u;
+        private TabelaPaginas regTabelaPaginas;
+        private int tamPg;
+        private int instrucoesExecutadas = 0;
+        private long fatia = 4;              // Tamanho da fatia corrente (instruções ou ns)
+        private boolean fatiaPorTempo = false; // true: fatia medida pelo timer em nanossegundos
+        private Timer timer;
+        private Relogio relogio;
+
+        // Conclusões de dispositivos pendentes: um anel único para todos os dispositivos, para
+        // que conclusões simultâneas não se percam. Uma interrupção atende todas as que houver.
+        // O kernel também conclui pedidos (setIOInterrupt) e não pode esperar por si mesmo:
+        // com o anel cheio, a conclusão vai para o transbordo.
+        private final AnelPedidos concluidos = new AnelPedidos(4096);
+        private final ConcurrentLinkedQueue<PedidoES> transbordo = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean interrupcaoPendente = new AtomicBoolean();
+        private long interrupcoesDispositivo;
+        private long conclusoesAtendidas;
+
+        // Para page faults
+        private int pageFaultLogicalAddress = -1;
+
+        // Última tradução: entrada usada (a da página ou a cabeça da huge page) e seu índice
+        private long entradaTraduzida;
+        private int paginaTraduzida;
+
+        // Contadores de tradução (taxa de acerto em huge pages)
+        private long traducoes;
+        private long traducoesHuge;
+
+        public CPU(Memory _mem, boolean _debug, int _tamPg, Timer _timer, Relogio _relogio) {
+            maxInt = 32767;
+            minInt = -32767;
+            m = _mem.pos;
+            reg = new int[TabelaProcessos.NUM_REGS];
+            debug = _debug;
+            tamPg = _tamPg;
+            timer = _timer;
+            relogio = _relogio;
+            regTabelaPaginas = null;
+        }
+
+        public void setDebug(boolean _debug) {
+            debug = _debug;
+        }
+
+        public void setTabelaPaginas(TabelaPaginas tabela) {
+            this.regTabelaPaginas = tabela;
+        }
+
+        // Os registradores são carregados pelo kernel diretamente em getReg() antes do despacho
+        public void setContext(int _pc, TabelaPaginas _tabelaPaginas) {
+            this.pc = _pc;
+            this.regTabelaPaginas = _tabelaPaginas;
+            this.irpt = Interrupts.noInterrupt;
+            this.instrucoesExecutadas = 0;
+        }
+
+        public int getPc() {
+            return pc;
+        }
+
+        public int[] getReg() {
+            return reg;
+        }
+
+        public int getInstrucoesExecutadas() {
+            return instrucoesExecutadas;
+        }
+
+        // Inicia uma nova fatia de tempo para o processo corrente
+        public void renovaFatia(long _fatia, boolean _porTempo) {
+            this.fatia = _fatia;
+            this.fatiaPorTempo = _porTempo;
+            this.instrucoesExecutadas = 0;
+            if (_porTempo) {
+                timer.arma(_fatia);
+            } else {
+                timer.desarma();
+            }
+        }
+
+        private boolean fimDeFatia() {
+            if (fatiaPorTempo) {
+                return timer.expirou();
+            }
+            return instrucoesExecutadas >= fatia;
+        }
+
+        // Registra a conclusão de um pedido. Retorna true se não havia interrupção pendente,
+        // ou seja, se quem concluiu deve acordar a CPU; senão a conclusão pega carona na
+        // interrupção já sinalizada.
+        public boolean conclui(PedidoES pedido) {
+            if (!concluidos.oferece(pedido)) {
+                transbordo.add(pedido);
+            }
+            return !interrupcaoPendente.getAndSet(true);
+        }
+
+        // Desbloqueio simples pelo caminho de interrupção. O pedido guarda o próprio PCB
+        // (não o pid), pois pids são reciclados; é o do próprio PCB, sem alocação. Entregá-lo
+        // duas vezes é inofensivo: a segunda conclusão não acha o processo bloqueado.
+        public void setIOInterrupt(PCB pcb) {
+            conclui(pcb.desbloqueio);
+        }
+
+        public PedidoES pollConcluido() {
+            PedidoES pedido = concluidos.retira();
+            if (pedido == null) {
+                pedido = transbordo.poll();
+            }
+            if (pedido != null) {
+                conclusoesAtendidas++;
+            }
+            return pedido;
+        }
+
+        public long getInterrupcoesDispositivo() {
+            return interrupcoesDispositivo;
+        }
+
+        public long getConclusoesAtendidas() {
+            return conclusoesAtendidas;
+        }
+
+        // Atende interrupções de dispositivos pendentes. Chamado antes de cada instrução
+        // e também pela thread da CPU quando ociosa (sem processo rodando).
+        public void atendeInterrupcoesPendentes() {
+            if (relogio.consomeTick()) {
+                ih.handle(Interrupts.intRelogio);
+            }
+            // Limpa o sinal antes de olhar o anel, mesmo que ele já esteja vazio: um sinal que
+            // sobrou (a conclusão foi atendida antes de quem a publicou sinalizar) faria as
+            // próximas conclusões pegarem carona numa interrupção que ninguém vai atender.
+            // Conclusões que chegarem daqui em diante sinalizam de novo.
+            if (interrupcaoPendente.get()) {
+                interrupcaoPendente.set(false);
+            }
+            if (!concluidos.vazio() || !transbordo.isEmpty()) {
+                interrupcoesDispositivo++;
+                ih.handle(Interrupts.intDispositivo);
+            }
+        }
+
+        public int getPageFaultLogicalAddress() {
+            return pageFaultLogicalAddress;
+        }
+
+        // O processo saiu da CPU fora de uma instrução (removido por uma operação do kernel)
+        public void processoRemovido() {
+            cpuStop = true;
+        }
+
+        // A SYSCALL em curso será executada de novo quando o processo voltar à CPU
+        public void reiniciaSyscall() {
+            pc--;
+        }
+
+        // Page fault numa cópia feita pelo kernel durante uma SYSCALL
+        public void faltaEmSyscall(int endLogico) {
+            reiniciaSyscall();
+            pageFaultLogicalAddress = endLogico;
+            irpt = Interrupts.intPageFault;
+        }
+
+        // Endereço inválido passado a uma SYSCALL: fatal, como num LDD/STD fora do espaço
+        public void enderecoInvalidoEmSyscall() {
+            reiniciaSyscall();
+            irpt = Interrupts.intEnderecoInvalido;
+        }
+
+        public long getTraducoes() {
+            return traducoes;
+        }
+
+        public long getTraducoesHuge() {
+            return traducoesHuge;
+        }
+
+        private int translate(int logicalAddress) {
+            // Se não há paginação ativa, retorna endereço direto
+            if (regTabelaPaginas == null) {
+                return logicalAddress;
+            }
+            
+            int pageNumber = logicalAddress / tamPg;
+            int offset = logicalAddress % tamPg;
+            
+            // Verifica se a página é válida
+            if (logicalAddress < 0 || pageNumber >= regTabelaPaginas.tamanho()) {
+                irpt = Interrupts.intEnderecoInvalido;
+                return -1;
+            }
+            
+            long entrada = regTabelaPaginas.get(pageNumber);
+            int paginaEntrada = pageNumber;
+            if (!TabelaPaginas.valida(entrada)) {
+                // Página pode estar coberta pela huge page do seu grupo
+                paginaEntrada = TabelaPaginas.cabecaHuge(pageNumber);
+                entrada = regTabelaPaginas.get(paginaEntrada);
+                if (!TabelaPaginas.valida(entrada) || !TabelaPaginas.huge(entrada)) {
+                    // PAGE FAULT: página não está na memória
+                    pageFaultLogicalAddress = logicalAddress;
+                    irpt = Interrupts.intPageFault;
+                    return -1;
+                }
+            }
+            if (!TabelaPaginas.referenciada(entrada)) {
+                regTabelaPaginas.ligaBits(paginaEntrada, TabelaPaginas.BIT_REFERENCIADO);
+            }
+            entradaTraduzida = entrada;
+            paginaTraduzida = paginaEntrada;
+            traducoes++;
+            if (TabelaPaginas.huge(entrada)) {
+                traducoesHuge++;
+            }
+            
+            // Physical Address Calculation (em huge pages, frames contíguos a partir do da cabeça)
+            int frame = TabelaPaginas.frame(entrada) + (pageNumber - paginaEntrada);
+            int physicalAddress = (frame * tamPg) + offset;
+            return physicalAddress;
+        }
+
+        // Tradução para escrita: além de traduzir, verifica proteção e marca o dirty bit
+        private int translateEscrita(int logicalAddress) {
+            int physicalAddress = translate(logicalAddress);
+            if (physicalAddress < 0 || regTabelaPaginas == null) {
+                return physicalAddress;
+            }
+            long entrada = entradaTraduzida;
+            if (TabelaPaginas.somenteLeitura(entrada)) {
+                irpt = Interrupts.intEnderecoInvalido;
+                return -1;
+            }
+            if (!TabelaPaginas.suja(entrada)) {
+                regTabelaPaginas.ligaBits(paginaTraduzida, TabelaPaginas.BIT_SUJO);
+            }
+            return physicalAddress;
+        }
+
+        public void setAddressOfHandlers(InterruptHandling _ih, SysCallHandling _sysCall) {
+            ih = _ih;
+            sysCall = _sysCall;
+        }
+
+        public void setUtilities(Utilities _u) {
+            u = _u;
+        }
+
+        private boolean legal(int e) {
+            if (e >= 0 && e < m.length) {
+                return true;
+            } else {
+                // Não sobrepõe um page fault já sinalizado pela tradução
+                if (irpt == Interrupts.noInterrupt) {
+                    irpt = Interrupts.intEnderecoInvalido;
+                }
+                return false;
+            }
+        }
+
+        private boolean testOverflow(int v) {
+            if ((v < minInt) || (v > maxInt)) {
+                irpt = Interrupts.intOverflow;
+                return false;
+            }
+            return true;
+        }
+
+        public void run_one_instruction() {
+            cpuStop = false;
+            
+            // Verifica interrupções de E/S e de disco VM pendentes
+            atendeInterrupcoesPendentes();
+            if (cpuStop) {
+                return; // Uma operação do kernel (rm) tirou o processo da CPU: a instrução não roda
+            }
+            
+            // --------------------------------------------------------------------------------------------------
+            // FASE DE FETCH
+            int physPC = translate(pc);
+            if (legal(physPC)) {
+                ir = m[physPC];
+                instrucoesExecutadas++;
+                
+                if (debug) {
+                    System.out.print("                                                         regs: ");
+                    for (int i = 0; i < 10; i++) {
+                        System.out.print(" r[" + i + "]:" + reg[i]);
+                    }
+                    System.out.println();
+                }
+                if (debug) {
+                    System.out.print("                         pc: " + pc + "       exec: ");
+                    u.dump(ir);
+                }
+
+            // --------------------------------------------------------------------------------------------------
+            // FASE DE EXECUCAO DA INSTRUCAO CARREGADA NO ir
+                switch (ir.opc) {
+                    case LDI:
+                        reg[ir.ra] = ir.p;
+                        pc++;
+                        break;
+                    case LDD:
+                        int physAddrLDD = translate(ir.p);
+                        if (legal(physAddrLDD)) {
+                            reg[ir.ra] = m[physAddrLDD].p;
+                            pc++;
+                        }
+                        break;
+                    case LDX:
+                        int logicalAddrLDX = reg[ir.rb];
+                        int physAddrLDX = translate(logicalAddrLDX);
+                        if (legal(physAddrLDX)) {
+                            reg[ir.ra] = m[physAddrLDX].p;
+                            pc++;
+                        }
+                        break;
+                    case STD:
+                        int physAddrSTD = translateEscrita(ir.p); // MARCA DIRTY BIT
+                        if (legal(physAddrSTD)) {
                             m[physAddrSTD].opc = Opcode.DATA;
                             m[physAddrSTD].p = reg[ir.ra];
-                            // MARCA DIRTY BIT
-                            markPageDirty(ir.p);
                             pc++;
                             if (debug) { 
                                 System.out.print("                                                 ");   
@@ -656,12 +2791,10 @@ public class Sistema {
                         break;
                     case STX:
                         int logicalAddrSTX = reg[ir.ra];
-                        int physAddrSTX = translate(logicalAddrSTX);
+                        int physAddrSTX = translateEscrita(logicalAddrSTX); // MARCA DIRTY BIT
                         if (legal(physAddrSTX)) {
                             m[physAddrSTX].opc = Opcode.DATA;
                             m[physAddrSTX].p = reg[ir.rb];
-                            // MARCA DIRTY BIT
-                            markPageDirty(logicalAddrSTX);
                             pc++;
                         }
                         break;
@@ -765,614 +2898,3582 @@ public class Sistema {
                             }
                         }
                         break;
-                    case JMPIEM:
-                        int physAddrJMPIEM = translate(ir.p);
-                        if (legal(physAddrJMPIEM)) {
-                            if (reg[ir.rb] == 0) {
-                                pc = m[physAddrJMPIEM].p;
-                            } else {
-                                pc++;
-                            }
+                    case JMPIEM:
+                        int physAddrJMPIEM = translate(ir.p);
+                        if (legal(physAddrJMPIEM)) {
+                            if (reg[ir.rb] == 0) {
+                                pc = m[physAddrJMPIEM].p;
+                            } else {
+                                pc++;
+                            }
+                        }
+                        break;
+                    case JMPIGT:
+                        if (reg[ir.ra] > reg[ir.rb]) {
+                            pc = ir.p;
+                        } else {
+                            pc++;
+                        }
+                        break;
+                    case DATA:
+                        irpt = Interrupts.intInstrucaoInvalida;
+                        break;
+                    case SYSCALL:
+                        pc++; // Retorno da chamada é a instrução seguinte
+                        sysCall.handle();
+                        break;
+                    case STOP:
+                        sysCall.stop();
+                        cpuStop = true;
+                        break;
+                    default:
+                        irpt = Interrupts.intInstrucaoInvalida;
+                        break;
+                }
+            }
+            
+            // Controle do Quantum - Preempção (não sobrepõe outra interrupção já gerada)
+            if (irpt == Interrupts.noInterrupt && fimDeFatia()) {
+                irpt = Interrupts.intFimDeFatiaDeTempo;
+            }
+            
+            // --------------------------------------------------------------------------------------------------
+            // VERIFICA INTERRUPÇÃO
+            if (irpt != Interrupts.noInterrupt) {
+                Interrupts atual = irpt;
+                irpt = Interrupts.noInterrupt; // O processo pode seguir na CPU (ex.: page fault demand-zero)
+                ih.handle(atual);
+                cpuStop = true;
+            }
+        }
+    }
+
+    // ------------------ C P U - fim
+    // -----------------------------------------------------------------------
+
+    // ------------------- HW - constituido de CPU e MEMORIA
+    // -----------------------------------------------
+    public class HW {
+        public Memory mem;
+        public CPU cpu;
+        public Timer timer;
+        public Relogio relogio;
+        public DiscoSwap swap;
+        public DMA dma;
+        public int tamPg;
+
+        public HW(int tamMem, int _tamPg) {
+            mem = new Memory(tamMem);
+            tamPg = _tamPg;
+            timer = new Timer();
+            relogio = new Relogio();
+            dma = new DMA(mem);
+            swap = new DiscoSwap(dma, _tamPg);
+            cpu = new CPU(mem, true, _tamPg, timer, relogio);
+        }
+    }
+
+    // ------------------- DMA - transferências de blocos entre dispositivos e memória
+    // -----------------------------------------------
+    // Os dispositivos copiam blocos da memória física direto, sem passar pela CPU nem pela
+    // tradução de endereços. A cópia é campo a campo sobre as palavras existentes, então
+    // nenhuma Word é alocada por transferência.
+    public class DMA {
+        private Memory mem;
+        private final AtomicLong transferencias = new AtomicLong();
+        private final AtomicLong palavras = new AtomicLong();
+
+        public DMA(Memory _mem) {
+            this.mem = _mem;
+        }
+
+        // origem[ini, ini + n) -> memória[endFisico, endFisico + n); além do fim da origem, zera
+        public void paraMemoria(Word[] origem, int ini, int endFisico, int n) {
+            for (int i = 0; i < n; i++) {
+                Word w = mem.pos[endFisico + i];
+                if (ini + i < origem.length) {
+                    Word o = origem[ini + i];
+                    w.opc = o.opc;
+                    w.ra = o.ra;
+                    w.rb = o.rb;
+                    w.p = o.p;
+                } else {
+                    w.opc = Opcode.___;
+                    w.ra = -1;
+                    w.rb = -1;
+                    w.p = 0;
+                }
+            }
+            contabiliza(n);
+        }
+
+        // memória[endFisico, endFisico + n) -> destino[ini, ini + n)
+        public void daMemoria(int endFisico, Word[] destino, int ini, int n) {
+            for (int i = 0; i < n; i++) {
+                Word w = mem.pos[endFisico + i];
+                Word d = destino[ini + i];
+                d.opc = w.opc;
+                d.ra = w.ra;
+                d.rb = w.rb;
+                d.p = w.p;
+            }
+            contabiliza(n);
+        }
+
+        private void contabiliza(int n) {
+            transferencias.incrementAndGet();
+            palavras.addAndGet(n);
+        }
+
+        public long getTransferencias() {
+            return transferencias.get();
+        }
+
+        public long getPalavras() {
+            return palavras.get();
+        }
+    }
+
+    // ------------------- DISCO DE SWAP - área de troca de páginas
+    // -----------------------------------------------
+    // Cada slot guarda uma página (tamPg palavras). Os slots são reutilizados via pilha de livres.
+    public class DiscoSwap {
+        private DMA dma;
+        private int tamPg;
+        private Word[][] slots;
+        private int[] livres;
+        private int numLivres;
+        private int proximoSlot;
+
+        public DiscoSwap(DMA _dma, int _tamPg) {
+            this.dma = _dma;
+            this.tamPg = _tamPg;
+            this.slots = new Word[16][];
+            this.livres = new int[16];
+            this.numLivres = 0;
+            this.proximoSlot = 0;
+        }
+
+        public synchronized int alocaSlot() {
+            if (numLivres > 0) {
+                return livres[--numLivres];
+            }
+            int slot = proximoSlot++;
+            if (slot >= slots.length) {
+                slots = Arrays.copyOf(slots, slots.length * 2);
+            }
+            return slot;
+        }
+
+        public synchronized void liberaSlot(int slot) {
+            if (numLivres == livres.length) {
+                livres = Arrays.copyOf(livres, livres.length * 2);
+            }
+            livres[numLivres++] = slot;
+        }
+
+        // Copia o frame para o slot (DMA). Só o acesso à tabela de slots é sincronizado, para
+        // que threads diferentes do disco copiem slots diferentes ao mesmo tempo.
+        public void salva(int slot, int frame) {
+            dma.daMemoria(frame * tamPg, bloco(slot), 0, tamPg);
+        }
+
+        // Copia o slot para o frame (DMA)
+        public void carrega(int slot, int frame) {
+            dma.paraMemoria(bloco(slot), 0, frame * tamPg, tamPg);
+        }
+
+        private synchronized Word[] bloco(int slot) {
+            if (slots[slot] == null) {
+                slots[slot] = new Word[tamPg];
+                for (int i = 0; i < tamPg; i++) {
+                    slots[slot][i] = new Word(Opcode.___, -1, -1, 0);
+                }
+            }
+            return slots[slot];
+        }
+    }
+
+    // ------------------- TIMER - dispositivo temporizador simulado
+    // -----------------------------------------------
+    public class Timer {
+        private long prazo = Long.MAX_VALUE; // Instante (System.nanoTime ou virtual) em que dispara
+        private Simulador sim;               // Modo -sim: mede o tempo virtual
+
+        public void setSimulador(Simulador _sim) {
+            sim = _sim;
+        }
+
+        private long agora() {
+            return sim != null ? sim.agora() : System.nanoTime();
+        }
+
+        public void arma(long nanos) {
+            prazo = agora() + nanos;
+        }
+
+        public void desarma() {
+            prazo = Long.MAX_VALUE;
+        }
+
+        public boolean expirou() {
+            return agora() >= prazo;
+        }
+    }
+
+    // ------------------- RELÓGIO - conta ticks de TICK_MS milissegundos
+    // -----------------------------------------------
+    // Avançado pela ThreadRelogio. Quando há temporizadores armados, cada tick sinaliza uma
+    // interrupção de relógio, atendida pela CPU junto com as demais interrupções pendentes.
+    public class Relogio {
+        public static final int TICK_MS = 10;
+
+        private volatile long ticks = 0;
+        private volatile boolean tickPendente = false;
+
+        public long ticks() {
+            return ticks;
+        }
+
+        public void avanca() {
+            ticks++;
+        }
+
+        // Modo -sim: os ticks derivam do tempo virtual
+        public void defineTicks(long _ticks) {
+            ticks = _ticks;
+        }
+
+        public void sinaliza() {
+            tickPendente = true;
+        }
+
+        // Retorna true (uma vez) se houve tick sinalizado desde a última consulta
+        public boolean consomeTick() {
+            if (!tickPendente) {
+                return false;
+            }
+            tickPendente = false;
+            return true;
+        }
+    }
+
+    // --------------------H A R D W A R E - fim
+    // -------------------------------------------------------------
+
+    // ------------------- THREADS DO SISTEMA -------------------
+
+    public class ThreadRelogio implements Runnable {
+        @Override
+        public void run() {
+            while(true) {
+                try {
+                    Thread.sleep(Relogio.TICK_MS);
+                    hw.relogio.avanca();
+                    if (so.temporizadores.pendentes() > 0) {
+                        hw.relogio.sinaliza();
+                        so.acordaCPU(); // Acorda a CPU caso esteja ociosa
+                    }
+                } catch (InterruptedException e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    public class ThreadEscalonador implements Runnable {
+        @Override
+        public void run() {
+            while(true) {
+                try {
+                    so.semaEscalonador.acquire();
+                    so.despacha();
+                } catch (InterruptedException e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    public class ThreadCPU implements Runnable {
+        @Override
+        public void run() {
+            while(true) {
+                try {
+                    so.semaCPU.acquire();
+                    if (so.gp.rodando == null) {
+                        // CPU ociosa: atende interrupções e aciona o escalonador se alguém ficou pronto
+                        synchronized (so.trava) {
+                            hw.cpu.atendeInterrupcoesPendentes();
+                        }
+                        if (so.gp.rodando == null && !so.gp.prontos.isEmpty()) {
+                            so.liberaEscalonador();
+                        }
+                    }
+                    while (so.gp.rodando != null) {
+                        hw.cpu.run_one_instruction();
+                    }
+                } catch (InterruptedException e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    // ------------------- SIMULAÇÃO DE EVENTOS DISCRETOS -------------------
+    // Modo -sim: CPU, escalonador, dispositivos e relógio avançam num único relógio virtual,
+    // todos na thread da CLI. Cada instrução custa NS_POR_INSTRUCAO; latências de dispositivo
+    // viram eventos numa fila de prioridade (tempo, ordem de agendamento). Com a CPU ociosa o
+    // relógio salta direto para o próximo evento. Mesmos comandos, mesma execução.
+    public class Simulador {
+        public static final long NS_POR_INSTRUCAO = 10;
+        public static final long TICK_NS = Relogio.TICK_MS * 1_000_000L;
+
+        private class Evento {
+            final long tempo;
+            final long ordem;   // Desempate: eventos simultâneos na ordem em que foram agendados
+            final Runnable acao;
+
+            Evento(long _tempo, long _ordem, Runnable _acao) {
+                this.tempo = _tempo;
+                this.ordem = _ordem;
+                this.acao = _acao;
+            }
+        }
+
+        private final PriorityQueue<Evento> eventos = new PriorityQueue<>(
+                (a, b) -> a.tempo != b.tempo ? Long.compare(a.tempo, b.tempo) : Long.compare(a.ordem, b.ordem));
+        private long agora;            // Tempo virtual (ns)
+        private long proximaOrdem;
+        private long limiteNs = 60_000_000_000L; // Máximo de tempo virtual por execução (processo em laço)
+        private boolean automatico = true;       // Executa após cada comando da CLI
+
+        // Estatísticas
+        private long eventosProcessados;
+        private long instrucoes;
+        private long ociosoNs;
+        private long duracaoRealNs;
+
+        public long agora() {
+            return agora;
+        }
+
+        public void agenda(long quando, Runnable acao) {
+            eventos.add(new Evento(Math.max(quando, agora), proximaOrdem++, acao));
+        }
+
+        public void setLimite(long ns) {
+            limiteNs = ns;
+        }
+
+        public boolean automatico() {
+            return automatico;
+        }
+
+        // Desligado, os comandos só preparam o cenário e 'sim run' executa tudo junto
+        public void setAutomatico(boolean _automatico) {
+            automatico = _automatico;
+        }
+
+        // Roda até o sistema ficar ocioso (nenhum processo pronto e nenhum evento pendente)
+        public void executa() {
+            executa(limiteNs);
+        }
+
+        public void executa(long duracaoNs) {
+            long inicioReal = System.nanoTime();
+            long fim = agora + duracaoNs;
+            while (true) {
+                atualizaRelogio();
+                Evento e;
+                while ((e = eventos.peek()) != null && e.tempo <= agora) {
+                    eventos.poll();
+                    eventosProcessados++;
+                    e.acao.run();
+                }
+                if (so.gp.rodando == null) {
+                    hw.cpu.atendeInterrupcoesPendentes();
+                    so.despacha();
+                }
+                if (so.gp.rodando != null) {
+                    if (agora >= fim) {
+                        System.out.println("SIM: Limite de " + duracaoNs / 1_000_000 + " ms virtuais atingido (t = " + formata(agora) + ").");
+                        break;
+                    }
+                    hw.cpu.run_one_instruction();
+                    instrucoes++;
+                    agora += NS_POR_INSTRUCAO;
+                    continue;
+                }
+                // CPU ociosa: salta para o próximo evento (ou tick, se alguém dorme)
+                long proximo;
+                if (!eventos.isEmpty()) {
+                    proximo = eventos.peek().tempo;
+                } else if (so.temporizadores.pendentes() > 0) {
+                    proximo = (agora / TICK_NS + 1) * TICK_NS;
+                } else {
+                    break; // Ocioso: nada mais acontece sem um comando
+                }
+                if (proximo > fim) {
+                    System.out.println("SIM: Limite de " + duracaoNs / 1_000_000 + " ms virtuais atingido (t = " + formata(agora) + ").");
+                    break;
+                }
+                ociosoNs += proximo - agora;
+                agora = proximo;
+            }
+            duracaoRealNs += System.nanoTime() - inicioReal;
+        }
+
+        // Os ticks do relógio derivam do tempo virtual
+        private void atualizaRelogio() {
+            long ticks = agora / TICK_NS;
+            if (ticks > hw.relogio.ticks()) {
+                hw.relogio.defineTicks(ticks);
+                if (so.temporizadores.pendentes() > 0) {
+                    hw.relogio.sinaliza();
+                }
+            }
+        }
+
+        private String formata(long ns) {
+            return String.format("%.3f ms", ns / 1e6);
+        }
+
+        public void info() {
+            System.out.println("=== SIMULAÇÃO ===");
+            System.out.println("Tempo virtual: " + formata(agora) + " (ocioso: " + formata(ociosoNs) + ")");
+            System.out.println("Instruções: " + instrucoes + " (" + NS_POR_INSTRUCAO + " ns cada) | eventos: "
+                    + eventosProcessados + " | pendentes: " + eventos.size());
+            System.out.println("Tempo real gasto: " + formata(duracaoRealNs) + " | limite por execução: "
+                    + limiteNs / 1_000_000 + " ms virtuais | automático: " + (automatico ? "on" : "off"));
+        }
+    }
+
+    // ------------------- KERNEL EM LAÇO ÚNICO -------------------
+    // Modo -kernel laco: uma só thread é dona de todas as estruturas do kernel. Ela executa as
+    // fatias da CPU, atende as conclusões que os dispositivos deixam na fila sem locks da CPU,
+    // conta os ticks do relógio e executa os comandos da CLI, que chegam por outra fila sem
+    // locks. Sem trabalho, a thread estaciona (LockSupport.park) até ser acordada.
+    public class LacoKernel implements Runnable {
+        private static final int INSTRUCOES_POR_VOLTA = 1024; // Entre verificações de relógio e comandos
+        private static final long TICK_NS = Relogio.TICK_MS * 1_000_000L;
+
+        private final ConcurrentLinkedQueue<Runnable> comandos = new ConcurrentLinkedQueue<>();
+        private volatile Thread thread;
+        private long proximoTick;
+
+        // Estatísticas (lidas por comandos, que rodam no próprio laço)
+        private long voltas;
+        private long estacionamentos;
+        private long comandosExecutados;
+
+        public void acorda() {
+            Thread t = thread;
+            if (t != null && Thread.currentThread() != t) {
+                LockSupport.unpark(t);
+            }
+        }
+
+        public boolean naThread() {
+            return Thread.currentThread() == thread;
+        }
+
+        // Executa o comando na thread do kernel e espera ele terminar (a saída sai em ordem)
+        public void executaEsperando(Runnable comando) {
+            CountDownLatch feito = new CountDownLatch(1);
+            comandos.add(() -> {
+                try {
+                    comando.run();
+                } finally {
+                    feito.countDown();
+                }
+            });
+            acorda();
+            try {
+                feito.await();
+            } catch (InterruptedException e) { e.printStackTrace(); }
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            proximoTick = System.nanoTime() + TICK_NS;
+            while (true) {
+                voltas++;
+                Runnable comando;
+                while ((comando = comandos.poll()) != null) {
+                    comandosExecutados++;
+                    comando.run();
+                }
+                avancaRelogio();
+                if (so.gp.rodando == null) {
+                    hw.cpu.atendeInterrupcoesPendentes();
+                    so.despacha();
+                }
+                if (so.gp.rodando != null) {
+                    // Uma volta de CPU; fim de fatia, bloqueio e conclusões são tratados dentro dela
+                    for (int i = 0; i < INSTRUCOES_POR_VOLTA && so.gp.rodando != null; i++) {
+                        hw.cpu.run_one_instruction();
+                    }
+                    continue;
+                }
+                // Ocioso: estaciona até uma conclusão, um comando ou o próximo tick (se alguém dorme).
+                // Um unpark anterior ao park não se perde: o park retorna na hora.
+                estacionamentos++;
+                if (so.temporizadores.pendentes() > 0) {
+                    LockSupport.parkNanos(Math.max(1, proximoTick - System.nanoTime()));
+                } else {
+                    LockSupport.park();
+                }
+            }
+        }
+
+        // O próprio laço conta os ticks: não há thread de relógio neste modo
+        private void avancaRelogio() {
+            long agora = System.nanoTime();
+            if (agora < proximoTick) {
+                return;
+            }
+            while (agora >= proximoTick) {
+                hw.relogio.avanca();
+                proximoTick += TICK_NS;
+            }
+            if (so.temporizadores.pendentes() > 0) {
+                hw.relogio.sinaliza();
+            }
+        }
+
+        public void info() {
+            System.out.println("Voltas do laço: " + voltas + " | estacionamentos: " + estacionamentos
+                    + " | comandos da CLI: " + comandosExecutados);
+        }
+    }
+
+    // ------------------- UMA THREAD POR PROCESSO -------------------
+    // Modo -kernel vthreads: cada processo é executado pela sua própria thread (virtual, se a
+    // JVM tiver; senão de plataforma, com pilha pequena). A thread roda o processo até ele sair
+    // da CPU (fim de fatia, bloqueio ou fim) e entrega a CPU ao primeiro da fila de prontos,
+    // escolhido pelo vruntime como nos outros modos. Bloqueado, o processo estaciona só a sua
+    // thread; quando o kernel o põe na fila de prontos (FilaProntos.add) a thread é acordada,
+    // mas só roda quando recebe a CPU.
+    public class ThreadsPorProcesso {
+        public static final int CPUS = 1; // O HW simulado tem uma CPU (registradores únicos)
+
+        // Thread que está com a CPU (a de um processo ou a de interrupções); null se livre
+        private final Object vez = new Object();
+        private Thread dona;
+        private final ThreadFactory fabrica;
+        private final boolean virtuais;
+        private final Thread interrupcoes; // Atende conclusões quando nenhum processo está na CPU
+        private final AtomicLong vivas = new AtomicLong();
+        private final AtomicLong estacionamentos = new AtomicLong();
+        private final AtomicLong posses = new AtomicLong();
+        private final AtomicLong entregas = new AtomicLong();
+
+        public ThreadsPorProcesso() {
+            ThreadFactory f;
+            boolean v;
+            try {
+                // Thread.ofVirtual().factory(), existente a partir do Java 21
+                Object construtor = Thread.class.getMethod("ofVirtual").invoke(null);
+                f = (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(construtor);
+                v = true;
+            } catch (ReflectiveOperationException e) {
+                v = false;
+                f = r -> {
+                    Thread t = new Thread(null, r, "processo", 256 * 1024);
+                    t.setDaemon(true);
+                    return t;
+                };
+            }
+            fabrica = f;
+            virtuais = v;
+            interrupcoes = new Thread(this::atendeInterrupcoes, "interrupcoes");
+            interrupcoes.setDaemon(true);
+        }
+
+        public void inicia() {
+            interrupcoes.start();
+        }
+
+        // Chamado na criação do processo, antes de ele entrar na fila de prontos
+        public void cria(PCB pcb) {
+            pcb.executor = fabrica.newThread(() -> executa(pcb));
+            vivas.incrementAndGet();
+            pcb.executor.start();
+        }
+
+        public void acorda() {
+            LockSupport.unpark(interrupcoes);
+        }
+
+        // A thread do processo só roda quando recebe a CPU de quem saiu dela (já com o seu
+        // contexto carregado). Acordada por FilaProntos.add, ela só pega a CPU se estiver
+        // livre, e ainda assim a entrega ao primeiro da fila, que pode ser outro processo.
+        private void executa(PCB pcb) {
+            Thread eu = Thread.currentThread();
+            try {
+                while (pcb.estado != ProcessState.TERMINATED) {
+                    if (!temCPU(eu) && !(pcb.estado == ProcessState.READY && pegaLivre(eu))) {
+                        estacionamentos.incrementAndGet();
+                        LockSupport.park(this); // Bloqueado, ou pronto esperando a vez
+                        continue;
+                    }
+                    if (so.gp.rodando == pcb) {
+                        posses.incrementAndGet();
+                        while (so.gp.rodando == pcb) {
+                            hw.cpu.run_one_instruction();
                         }
+                    }
+                    if (!entrega()) {
+                        acorda(); // CPU livre: pode ter chegado uma conclusão enquanto ele rodava
+                    }
+                }
+            } finally {
+                synchronized (vez) {
+                    if (dona == eu) {
+                        dona = null; // Thread morrendo com a CPU (exceção): não a leva junto
+                    }
+                }
+                vivas.decrementAndGet();
+            }
+        }
+
+        // Com todos os processos bloqueados ninguém executa instruções: esta thread pega a CPU
+        // livre e atende as conclusões e ticks pendentes, o que devolve processos aos prontos.
+        private void atendeInterrupcoes() {
+            Thread eu = Thread.currentThread();
+            while (true) {
+                LockSupport.park(this);
+                if (pegaLivre(eu)) {
+                    hw.cpu.atendeInterrupcoesPendentes();
+                    entrega();
+                }
+            }
+        }
+
+        private boolean temCPU(Thread t) {
+            synchronized (vez) {
+                return dona == t;
+            }
+        }
+
+        private boolean pegaLivre(Thread t) {
+            synchronized (vez) {
+                if (dona != null) {
+                    return false;
+                }
+                dona = t;
+                return true;
+            }
+        }
+
+        // Chamado por quem está com a CPU, ao sair dela: carrega o primeiro pronto e acorda a
+        // thread dele. Retorna false se não havia pronto e a CPU ficou livre.
+        private boolean entrega() {
+            synchronized (vez) {
+                PCB proximo = so.gp.prontos.pollFirst();
+                if (proximo == null) {
+                    dona = null;
+                    return false;
+                }
+                so.colocaNaCPU(proximo);
+                entregas.incrementAndGet();
+                dona = proximo.executor;
+                LockSupport.unpark(dona);
+                return true;
+            }
+        }
+
+        public void info() {
+            System.out.println("Threads de processo: " + (virtuais ? "virtuais" : "de plataforma (JVM sem threads virtuais)")
+                    + " | vivas: " + vivas.get() + " | CPUs: " + CPUS);
+            System.out.println("Posses da CPU: " + posses.get() + " | entregas: " + entregas.get()
+                    + " | estacionamentos: " + estacionamentos.get() + " | prontos: " + so.gp.prontos.size());
+        }
+    }
+
+    // ------------------- DISPOSITIVOS -------------------
+    // Base comum dos dispositivos: cada thread de serviço tem sua fila de submissão (um anel
+    // pré-alocado), e o pedido vai para a fila escolhida pela sua chave. A thread retira da fila tudo o que já chegou
+    // (até maxLote) e entrega o lote ao dispositivo, que conclui os pedidos com 'completa'.
+    // As conclusões vão para a fila única da CPU; só a primeira de uma rajada acorda a CPU,
+    // as demais são atendidas na mesma interrupção.
+    public abstract class Dispositivo {
+        public static final int CAPACIDADE_FILA = 1024; // Pedidos por fila (anel pré-alocado)
+
+        public final String nome;
+        private final int maxThreads;  // Dispositivos com estado próprio aceitam só 1
+        private final int maxLote;
+        private List<AnelPedidos> filas;
+        private long[] livreEm;        // Modo -sim: instante virtual em que cada fila fica livre
+        private boolean iniciado;
+
+        // Estatísticas
+        private final AtomicLong submetidos = new AtomicLong();
+        private final AtomicLong concluidos = new AtomicLong();
+        private final AtomicLong lotes = new AtomicLong();
+        private final AtomicLong despertares = new AtomicLong();
+
+        public Dispositivo(String _nome, int _threads, int _maxThreads, int _maxLote) {
+            this.nome = _nome;
+            this.maxThreads = _maxThreads;
+            this.maxLote = _maxLote;
+            setThreads(_threads);
+        }
+
+        // Só antes de iniciar. Retorna false se o número for inválido para o dispositivo.
+        public boolean setThreads(int n) {
+            if (iniciado || n < 1 || n > maxThreads) {
+                return false;
+            }
+            filas = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                filas.add(new AnelPedidos(CAPACIDADE_FILA));
+            }
+            livreEm = new long[n];
+            return true;
+        }
+
+        public void inicia() {
+            iniciado = true;
+            for (int i = 0; i < filas.size(); i++) {
+                AnelPedidos fila = filas.get(i);
+                new Thread(() -> servico(fila), nome + "-" + i).start();
+            }
+        }
+
+        public void submete(PedidoES pedido) {
+            registraProfundidade(submetidos.getAndIncrement() - concluidos.get());
+            int i = Math.floorMod(pedido.chave(), filas.size());
+            if (so.sim != null) {
+                // Cada fila atende um pedido por vez: o pedido começa quando ela fica livre e a
+                // latência avança o relógio virtual em vez de dormir
+                long inicio = Math.max(so.sim.agora(), livreEm[i]);
+                livreEm[i] = inicio + latenciaNs(pedido);
+                so.sim.agenda(livreEm[i], () -> {
+                    lotes.incrementAndGet();
+                    try {
+                        atende(Collections.singletonList(pedido));
+                    } catch (InterruptedException e) { e.printStackTrace(); }
+                });
+                return;
+            }
+            filas.get(i).publica(pedido);
+        }
+
+        // Tempo de serviço simulado de um pedido
+        protected long latenciaNs(PedidoES pedido) {
+            return 0;
+        }
+
+        // Pedidos ainda não concluídos na chegada de um novo (na fila ou em serviço)
+        protected void registraProfundidade(long pendentes) {
+        }
+
+        // Pedidos submetidos e ainda não concluídos (na fila ou em serviço); sem trava
+        public long naoConcluidos() {
+            return submetidos.get() - concluidos.get();
+        }
+
+        // Espera a latência do pedido; no modo -sim ela já foi contada no relógio virtual
+        protected void espera(PedidoES pedido) throws InterruptedException {
+            if (so.sim == null) {
+                long ns = latenciaNs(pedido);
+                Thread.sleep(ns / 1_000_000, (int) (ns % 1_000_000));
+            }
+        }
+
+        private void servico(AnelPedidos fila) {
+            List<PedidoES> lote = new ArrayList<>();
+            while (true) {
+                try {
+                    lote.add(fila.espera());
+                    PedidoES pedido;
+                    while (lote.size() < maxLote && (pedido = fila.retira()) != null) {
+                        lote.add(pedido);
+                    }
+                    lotes.incrementAndGet();
+                    atende(lote);
+                    lote.clear();
+                } catch (InterruptedException e) { e.printStackTrace(); }
+            }
+        }
+
+        // Atende um lote retirado de uma fila; os pedidos terminados são passados a 'completa'
+        protected abstract void atende(List<PedidoES> lote) throws InterruptedException;
+
+        protected void completa(PedidoES pedido) {
+            concluidos.incrementAndGet();
+            if (hw.cpu.conclui(pedido) && so.sim == null) {
+                despertares.incrementAndGet();
+                so.acordaCPU(); // Acorda a CPU caso esteja ociosa
+            }
+        }
+
+        public int pendentes() {
+            int n = 0;
+            for (AnelPedidos fila : filas) {
+                n += fila.ocupacao();
+            }
+            return n;
+        }
+
+        public void info() {
+            System.out.printf("%-8s %7d %9d %10d %6d %10d %9d%n", nome, filas.size(), submetidos.get(),
+                    concluidos.get(), lotes.get(), despertares.get(), pendentes());
+        }
+    }
+
+    // ------------------- ENTRADA DO CONSOLE -------------------
+    // Fonte única de entrada do sistema. O stdin tem um só leitor (a CLI): linhas de comando são
+    // interpretadas por ela, e linhas só com números viram valores digitados para o console.
+    // Cada leitura de um processo consome, em ordem: o roteiro do processo, o arquivo de
+    // entrada (se houver) e, por fim, os valores digitados.
+    public class EntradaConsole {
+        private final BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
+        private final ConcurrentLinkedQueue<Integer> digitados = new ConcurrentLinkedQueue<>();
+        private BufferedReader arquivo;     // null = sem arquivo de entrada
+        private String nomeArquivo;
+        private StringTokenizer tokensArquivo;
+
+        // Próxima linha do stdin (null no fim da entrada). Usado apenas pela CLI.
+        public String leLinha() throws IOException {
+            return stdin.readLine();
+        }
+
+        // Valores de uma linha só com inteiros, ou null se a linha tiver outra coisa
+        public int[] numeros(String linha) {
+            String[] tokens = linha.trim().split("\\s+");
+            int[] valores = new int[tokens.length];
+            for (int i = 0; i < tokens.length; i++) {
+                if (!tokens[i].matches("-?\\d+")) {
+                    return null;
+                }
+                valores[i] = Integer.parseInt(tokens[i]);
+            }
+            return valores;
+        }
+
+        public void digita(int[] valores) {
+            for (int v : valores) {
+                digitados.add(v);
+            }
+            so.console.novaEntrada();
+        }
+
+        public void roteiriza(PCB pcb, int[] valores) {
+            Queue<Integer> roteiro = new ConcurrentLinkedQueue<>();
+            for (int v : valores) {
+                roteiro.add(v);
+            }
+            pcb.roteiroEntrada = roteiro;
+            so.console.novaEntrada();
+        }
+
+        public synchronized void abreArquivo(String nome) throws IOException {
+            BufferedReader novo = new BufferedReader(new FileReader(nome));
+            fechaArquivo();
+            arquivo = novo;
+            nomeArquivo = nome;
+            so.console.novaEntrada();
+        }
+
+        public synchronized void usaStdin() {
+            fechaArquivo();
+        }
+
+        private void fechaArquivo() {
+            if (arquivo != null) {
+                try {
+                    arquivo.close();
+                } catch (IOException e) { /* nada a fazer */ }
+            }
+            arquivo = null;
+            nomeArquivo = null;
+            tokensArquivo = null;
+        }
+
+        // Próximo valor para o processo, ou null se nenhuma fonte tiver dados agora
+        public synchronized Integer proximo(PCB pcb) {
+            Queue<Integer> roteiro = pcb.roteiroEntrada;
+            if (roteiro != null) {
+                Integer v = roteiro.poll();
+                if (v != null) {
+                    return v;
+                }
+            }
+            Integer v = proximoDoArquivo();
+            return v != null ? v : digitados.poll();
+        }
+
+        // No fim do arquivo (ou em valor inválido) volta para o stdin
+        private Integer proximoDoArquivo() {
+            try {
+                while (arquivo != null) {
+                    if (tokensArquivo != null && tokensArquivo.hasMoreTokens()) {
+                        return Integer.parseInt(tokensArquivo.nextToken());
+                    }
+                    String linha = arquivo.readLine();
+                    if (linha == null) {
+                        System.out.println("CONSOLE: Fim do arquivo " + nomeArquivo + "; entrada volta para o stdin.");
+                        fechaArquivo();
+                    } else {
+                        tokensArquivo = new StringTokenizer(linha);
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                System.out.println("CONSOLE: Erro lendo " + nomeArquivo + " (" + e.getMessage() + "); entrada volta para o stdin.");
+                fechaArquivo();
+            }
+            return null;
+        }
+
+        public synchronized String fonte() {
+            return arquivo != null ? "arquivo " + nomeArquivo + " (depois stdin)" : "stdin";
+        }
+
+        public int digitadosEmEspera() {
+            return digitados.size();
+        }
+    }
+
+    // ------------------- DISPOSITIVO CONSOLE -------------------
+    // Atende os pedidos em lotes: a saída do lote é acumulada num buffer e impressa com uma só
+    // escrita, e as conclusões são entregues depois dela. Leituras sem dados ficam pendentes
+    // sem bloquear as escritas dos outros processos. Uma thread só: o estado não é compartilhado.
+    public class DispositivoConsole extends Dispositivo {
+        private static final int LIMITE_BUFFER = 8192; // Descarrega antes se a saída do lote passar disso
+
+        private final IORequest novaEntrada = new IORequest(null, 0, 0, 0); // Aviso de dados novos
+        private final List<IORequest> prontas = new ArrayList<>();
+        private final ArrayDeque<IORequest> leiturasPendentes = new ArrayDeque<>();
+        private final StringBuilder buffer = new StringBuilder();
+        private final Map<Integer, StringBuilder> capturas = new TreeMap<>(); // pid -> saída capturada
+        private volatile boolean capturando;
+
+        // Estatísticas
+        private volatile long escritas, leituras, palavrasEscritas, palavrasLidas, descargas;
+        private volatile int pendentes;
+
+        public DispositivoConsole() {
+            super("console", 1, 1, Integer.MAX_VALUE);
+        }
+
+        // Chamado quando alguma fonte recebe dados: revê as leituras pendentes
+        public void novaEntrada() {
+            submete(novaEntrada);
+        }
+
+        @Override
+        protected void atende(List<PedidoES> lote) {
+            int antigas = leiturasPendentes.size();
+            for (PedidoES pedido : lote) {
+                IORequest req = (IORequest) pedido;
+                if (req.tipo == 2) {
+                    escreve(req);
+                } else if (req.tipo == 1) {
+                    leiturasPendentes.add(req);
+                }
+            }
+            atendeLeituras(antigas);
+            descarrega();
+            for (IORequest req : prontas) {
+                completa(req);
+            }
+            prontas.clear();
+        }
+
+        private StringBuilder faixa(StringBuilder destino, IORequest req) {
+            destino.append(req.endLogico);
+            if (req.tamanho > 1) {
+                destino.append("..").append(req.endLogico + req.tamanho - 1);
+            }
+            return destino;
+        }
+
+        private void escreve(IORequest req) {
+            if (capturando) {
+                synchronized (capturas) {
+                    valores(capturas.computeIfAbsent(req.pcb.id, k -> new StringBuilder()), req);
+                }
+            } else {
+                buffer.append("    > CONSOLE OUTPUT (de pid: ").append(req.pcb.id).append(", end: ");
+                faixa(buffer, req).append("): ");
+                valores(buffer, req);
+                if (buffer.length() >= LIMITE_BUFFER) {
+                    descarrega();
+                }
+            }
+            escritas++;
+            palavrasEscritas += req.tamanho;
+            prontas.add(req);
+        }
+
+        // Acrescenta os valores escritos direto no destino, sem montar texto intermediário
+        private void valores(StringBuilder destino, IORequest req) {
+            for (int i = 0; i < req.tamanho; i++) {
+                if (i > 0) {
+                    destino.append(' ');
+                }
+                destino.append(req.dados[i]);
+            }
+            destino.append('\n');
+        }
+
+        // Preenche as leituras pendentes em ordem de chegada.
+        // As 'antigas' primeiras já foram anunciadas em lotes anteriores.
+        private void atendeLeituras(int antigas) {
+            Iterator<IORequest> it = leiturasPendentes.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                IORequest req = it.next();
+                if (req.pcb.estado == ProcessState.TERMINATED) {
+                    it.remove(); // Processo removido enquanto esperava
+                    continue;
+                }
+                boolean nova = i >= antigas;
+                Integer v;
+                while (req.preenchidos < req.tamanho && (v = so.entrada.proximo(req.pcb)) != null) {
+                    req.dados[req.preenchidos++] = v;
+                }
+                if (req.preenchidos == req.tamanho) {
+                    it.remove();
+                    leituras++;
+                    palavrasLidas += req.tamanho;
+                    req.pcb.leituraConcluida = req; // Copiada para a memória quando o processo voltar
+                    prontas.add(req);
+                } else if (nova) {
+                    buffer.append("    > CONSOLE INPUT (para pid: ").append(req.pcb.id).append(", end: ");
+                    faixa(buffer, req).append("): aguardando ").append(req.tamanho).append(" valor(es)\n");
+                }
+            }
+            pendentes = leiturasPendentes.size();
+        }
+
+        private void descarrega() {
+            if (buffer.length() == 0) {
+                return;
+            }
+            System.out.print(buffer);
+            System.out.flush();
+            buffer.setLength(0);
+            descargas++;
+        }
+
+        public void setCaptura(boolean ligada) {
+            capturando = ligada;
+            System.out.println("CONSOLE: Captura de saída " + (ligada ? "ligada." : "desligada."));
+        }
+
+        // Mostra (e descarta) a saída capturada de um processo, ou de todos se id < 0
+        public void saida(int id) {
+            synchronized (capturas) {
+                if (capturas.isEmpty() || (id >= 0 && !capturas.containsKey(id))) {
+                    System.out.println("CONSOLE: Nenhuma saída capturada" + (id >= 0 ? " do pid " + id + "." : "."));
+                    return;
+                }
+                Iterator<Map.Entry<Integer, StringBuilder>> it = capturas.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<Integer, StringBuilder> e = it.next();
+                    if (id < 0 || e.getKey() == id) {
+                        System.out.print("--- saída do pid " + e.getKey() + " ---\n" + e.getValue());
+                        it.remove();
+                    }
+                }
+            }
+        }
+
+        public void resumo() {
+            System.out.println("=== CONSOLE ===");
+            System.out.println("Entrada: " + so.entrada.fonte() + ", " + so.entrada.digitadosEmEspera()
+                    + " valor(es) digitados em espera, " + pendentes + " leitura(s) aguardando");
+            System.out.println("Leituras: " + leituras + " (" + palavrasLidas + " palavras)");
+            System.out.println("Escritas: " + escritas + " (" + palavrasEscritas + " palavras) em "
+                    + descargas + " descarga(s)");
+            System.out.println("Captura de saída: " + (capturando ? "ligada" : "desligada"));
+        }
+    }
+
+    // ------------------- DISPOSITIVO DISCO VM -------------------
+    // Cargas e salvamentos de páginas, copiados por DMA. Com mais de uma thread, operações
+    // sobre o mesmo slot de swap continuam em ordem (mesma chave, mesma fila).
+    public class DispositivoDisco extends Dispositivo {
+        public static final int LATENCIA_MS = 100; // Tempo simulado de cada operação
+
+        public DispositivoDisco() {
+            super("disco", 1, 64, 1);
+        }
+
+        @Override
+        protected long latenciaNs(PedidoES pedido) {
+            return LATENCIA_MS * 1_000_000L;
+        }
+
+        @Override
+        protected void registraProfundidade(long pendentes) {
+            so.latencias.filaDisco.registra(pendentes);
+        }
+
+        @Override
+        protected void atende(List<PedidoES> lote) throws InterruptedException {
+            for (PedidoES pedido : lote) {
+                IORequestVM req = (IORequestVM) pedido;
+                EventoDisco evento = new EventoDisco();
+                evento.begin();
+
+                // Simula tempo de I/O do disco
+                espera(req);
+
+                if (req.tipoOperacao == 0) {
+                    // LOAD_PAGE: Carrega página do disco para memória
+                    System.out.println("DISCO VM: Carregando página " + req.pageNumber + " do processo " + req.pcb.id + " para frame " + req.frameNumber);
+                    if (req.swap) {
+                        // Página despejada anteriormente: volta do swap
+                        hw.swap.carrega(req.diskAddress, req.frameNumber);
+                    } else {
+                        // Carrega a(s) página(s) da imagem do programa (simulando disco) numa só transferência
+                        hw.dma.paraMemoria(req.pcb.programa.image, req.diskAddress, req.frameNumber * hw.tamPg,
+                                           hw.tamPg * req.numPaginas);
+                    }
+                } else {
+                    // SAVE_PAGE: Salva página da memória para o slot de swap
+                    System.out.println("DISCO VM: Salvando página " + req.pageNumber + " do processo " + req.pcb.id + " do frame " + req.frameNumber + " no slot " + req.diskAddress);
+                    hw.swap.salva(req.diskAddress, req.frameNumber);
+                }
+                evento.end();
+                if (evento.shouldCommit()) {
+                    evento.pid = req.pcb.id;
+                    evento.operacao = req.tipoOperacao == 0 ? "carga" : "gravação";
+                    evento.pagina = req.pageNumber;
+                    evento.frame = req.frameNumber;
+                    evento.paginas = req.numPaginas;
+                    evento.swap = req.swap;
+                    evento.commit();
+                }
+                completa(req);
+            }
+        }
+    }
+
+    // ------------------- I N T E R R U P C O E S - rotinas de tratamento
+    // ----------------------------------
+    public class InterruptHandling {
+        private SO so;
+
+        public InterruptHandling(SO _so) {
+            so = _so;
+        }
+
+        public void handle(Interrupts irpt) {
+            switch (irpt) {
+                case intFimDeFatiaDeTempo:
+                    PCB processoAtual = so.gp.rodando;
+                    if (processoAtual == null) {
+                        break; // Processo já deixou a CPU (STOP ou SYSCALL nesta instrução)
+                    }
+                    so.gp.tabela.conta(processoAtual, Contadores.QUANTA, 1);
+                    EventoFimQuantum fimQuantum = new EventoFimQuantum();
+                    if (fimQuantum.isEnabled()) {
+                        fimQuantum.pid = processoAtual.id;
+                        fimQuantum.instrucoes = hw.cpu.getInstrucoesExecutadas();
+                        fimQuantum.preemptado = !so.gp.prontos.isEmpty();
+                        fimQuantum.commit();
+                    }
+                    if (so.gp.prontos.isEmpty()) {
+                        // Ninguém mais está pronto: não preempta, apenas inicia nova fatia
+                        so.gp.contabilizaFatia(processoAtual);
+                        hw.cpu.renovaFatia(so.quantum.calcula(), so.quantum.porTempo());
                         break;
-                    case JMPIGT:
-                        if (reg[ir.ra] > reg[ir.rb]) {
-                            pc = ir.p;
-                        } else {
-                            pc++;
+                    }
+                    so.gp.salvaContexto(processoAtual);
+                    processoAtual.estado = ProcessState.READY;
+                    so.gp.prontos.add(processoAtual);
+                    so.gp.rodando = null;
+                    so.liberaEscalonador();
+                    break;
+                    
+                case intDispositivo:
+                    // Atende, em lote, todas as conclusões de todos os dispositivos
+                    PedidoES pedido;
+                    while ((pedido = hw.cpu.pollConcluido()) != null) {
+                        pedido.conclui();
+                    }
+                    break;
+                    
+                case intPageFault:
+                    handlePageFault();
+                    break;
+
+                case intRelogio:
+                    // Acorda, em lote, os processos cujos despertadores venceram
+                    int vencidos = so.temporizadores.avanca(hw.relogio.ticks());
+                    int n = 0;
+                    for (int i = 0; i < vencidos; i++) {
+                        PCB p = so.temporizadores.vencido(i);
+                        if (so.gp.bloqueados.remove(p)) {
+                            p.estado = ProcessState.READY;
+                            so.gp.prontos.add(p);
+                            n++;
                         }
+                    }
+                    if (n > 0) {
+                        System.out.println("    > INT RELÓGIO: " + n + " processo(s) acordado(s) no tick " + hw.relogio.ticks());
+                    }
+                    break;
+                    
+                case intEnderecoInvalido:
+                case intInstrucaoInvalida:
+                case intOverflow:
+                    System.out.println("!!!! INTERRUPÇÃO FATAL: " + irpt + " no Processo " + so.gp.rodando.id);
+                    PCB processoComErro = so.gp.rodando;
+                    so.gp.contabilizaFatia(processoComErro);
+                    so.gp.rodando = null;
+                    if (so.carga != null) {
+                        so.carga.terminou(processoComErro, true);
+                    }
+                    so.gp.desalocaProcesso(processoComErro.id);
+                    so.liberaEscalonador();
+                    break;
+                    
+                default:
+                    System.out.println("IH: Interrupção não tratada: " + irpt);
+                    break;
+            }
+        }
+
+        private void handlePageFault() {
+            PCB processoAtual = so.gp.rodando;
+            int logicalAddress = hw.cpu.getPageFaultLogicalAddress();
+            int pageNumber = logicalAddress / hw.tamPg;
+            
+            System.out.println("    > PAGE FAULT: Processo " + processoAtual.id + " na página " + pageNumber + " (end. lógico: " + logicalAddress + ")");
+            so.gp.faltasTotais++;
+            if (processoAtual.faltaDesde == Long.MIN_VALUE) {
+                processoAtual.faltaDesde = so.agora(); // Uma nova tentativa mantém o início da falta
+            }
+            EventoFaltaPagina evento = new EventoFaltaPagina();
+            if (evento.isEnabled()) {
+                evento.pid = processoAtual.id;
+                evento.pagina = pageNumber;
+                evento.endereco = logicalAddress;
+                evento.commit();
+            }
+
+            // Região marcada para huge pages: tenta trazer o grupo inteiro de uma vez
+            TabelaPaginas tabela = processoAtual.tabelaPaginas;
+            int cabeca = TabelaPaginas.cabecaHuge(pageNumber);
+            if (tabela.querHuge(pageNumber) && tabela.grupoElegivel(cabeca)) {
+                int base = so.gerenteMem.alocaBloco(TabelaPaginas.PAGINAS_POR_HUGE);
+                if (base != -1) {
+                    so.gerenteMem.hugeAlocadas++;
+                    processoAtual.caminhoFalta = so.latencias.faltaLivre;
+                    if (solicitaCargaHuge(processoAtual, base, cabeca)) {
+                        faltaAtendida(processoAtual);
+                    } else {
+                        bloqueia(processoAtual);
+                    }
+                    return;
+                }
+                so.gerenteMem.hugeFallbacks++;
+                System.out.println("    > PAGE FAULT: Sem bloco alinhado para huge page, usando página comum");
+            }
+
+            // Tenta alocar um frame livre
+            int frame = so.gerenteMem.alocaFrame();
+            if (frame != -1) {
+                // Cenário 1: Frame livre encontrado
+                System.out.println("    > PAGE FAULT: Frame livre " + frame + " alocado");
+                processoAtual.caminhoFalta = so.latencias.faltaLivre;
+            } else {
+                // Cenário 2: Sem frames livres - vitimização
+                System.out.println("    > PAGE FAULT: Memória cheia, iniciando vitimização");
+                frame = so.gerenteMem.escolheVitima();
+                if (frame == -1) {
+                    // Todos os frames estão em carga: dorme um tick e tenta de novo. Voltar direto
+                    // para os prontos giraria sem o relógio andar (no -sim, o disco nunca concluiria)
+                    System.out.println("    > PAGE FAULT: Nenhum frame disponível para vitimização");
+                    so.gp.salvaContexto(processoAtual);
+                    processoAtual.estado = ProcessState.BLOCKED;
+                    so.gp.bloqueados.add(processoAtual);
+                    so.gp.rodando = null;
+                    so.temporizadores.arma(processoAtual, 1);
+                    so.liberaEscalonador();
+                    return;
+                }
+                PCB pcbVitima = so.gerenteMem.donoDoFrame(frame);
+                if (pcbVitima != null) {
+                    so.gp.tabela.conta(pcbVitima, Contadores.DESPEJOS, 1);
+                    int pageVitima = so.gerenteMem.paginaDoFrame(frame);
+                    if (pcbVitima.tabelaPaginas.resolve(pageVitima) != pageVitima) {
+                        // Frame pertence a uma huge page: divide antes de despejar só este frame
+                        pcbVitima.tabelaPaginas.divideHuge(TabelaPaginas.cabecaHuge(pageVitima));
+                        so.gerenteMem.hugeDivididas++;
+                    }
+                    long entradaVitima = pcbVitima.tabelaPaginas.get(pageVitima);
+                    EventoDespejo despejo = new EventoDespejo();
+                    if (despejo.isEnabled()) {
+                        despejo.pidVitima = pcbVitima.id;
+                        despejo.pagina = pageVitima;
+                        despejo.frame = frame;
+                        despejo.suja = TabelaPaginas.suja(entradaVitima);
+                        despejo.pidFalta = processoAtual.id;
+                        despejo.commit();
+                    }
+                    
+                    if (TabelaPaginas.suja(entradaVitima)) {
+                        // Vítima dirty - invalida já e salva no swap; o fault fica pendente
+                        int slot = TabelaPaginas.emSwap(entradaVitima)
+                                ? TabelaPaginas.enderecoDisco(entradaVitima) : hw.swap.alocaSlot();
+                        System.out.println("    > VITIMIZAÇÃO: Frame " + frame + " (página " + pageVitima + " do processo " + pcbVitima.id + ") é dirty, salvando...");
+                        pcbVitima.tabelaPaginas.paraSwap(pageVitima, slot);
+                        so.gp.tabela.conta(pcbVitima, Contadores.GRAVACOES, 1);
+                        so.disco.submete(so.pedidosDisco.pega().prepara(pcbVitima, frame, pageVitima, slot, 1, true));
+                        
+                        // Armazena page fault pendente
+                        processoAtual.caminhoFalta = so.latencias.faltaSuja;
+                        so.filaPageFaultPendentes.adiciona(processoAtual, pageNumber);
+                        bloqueia(processoAtual);
+                        return;
+                    }
+                    // Vítima clean - pode reusar imediatamente
+                    System.out.println("    > VITIMIZAÇÃO: Frame " + frame + " (página " + pageVitima + " do processo " + pcbVitima.id + ") é clean, reutilizando...");
+                    pcbVitima.tabelaPaginas.desligaBits(pageVitima, TabelaPaginas.BIT_VALIDO);
+                }
+                processoAtual.caminhoFalta = so.latencias.faltaLimpa;
+            }
+
+            // Marca o frame como ocupado por esta página e busca o conteúdo
+            processoAtual.tabelaPaginas.setFrame(pageNumber, frame);
+            so.gerenteMem.ocupaFrame(frame, processoAtual, pageNumber);
+            if (solicitaCarga(processoAtual, frame, pageNumber)) {
+                // Página demand-zero: já mapeada, o processo segue na CPU e repete a instrução
+                faltaAtendida(processoAtual);
+            } else {
+                bloqueia(processoAtual);
+            }
+        }
+
+        // Fim do atendimento de uma falta: registra o tempo desde o trap no histograma do caminho
+        private void faltaAtendida(PCB pcb) {
+            if (pcb.caminhoFalta != null && pcb.faltaDesde != Long.MIN_VALUE) {
+                long atendimento = so.agora() - pcb.faltaDesde;
+                pcb.caminhoFalta.registra(atendimento);
+                EventoFaltaAtendida evento = new EventoFaltaAtendida();
+                if (evento.isEnabled()) {
+                    evento.pid = pcb.id;
+                    evento.caminho = pcb.caminhoFalta.nome;
+                    evento.atendimento = atendimento;
+                    evento.commit();
+                }
+            }
+            pcb.faltaDesde = Long.MIN_VALUE;
+            pcb.caminhoFalta = null;
+        }
+
+        // Preenche o frame da página. Páginas demand-zero são zeradas e mapeadas aqui mesmo
+        // (retorna true); as demais geram um pedido ao disco (da imagem ou do swap).
+        private boolean solicitaCarga(PCB pcb, int frame, int pageNumber) {
+            long entrada = pcb.tabelaPaginas.get(pageNumber);
+            if (TabelaPaginas.demandZero(entrada)) {
+                int base = frame * hw.tamPg;
+                for (int i = 0; i < hw.tamPg; i++) {
+                    Word w = hw.mem.pos[base + i];
+                    w.opc = Opcode.___;
+                    w.ra = -1;
+                    w.rb = -1;
+                    w.p = 0;
+                }
+                pcb.tabelaPaginas.mapeia(pageNumber, frame);
+                so.gp.tabela.conta(pcb, Contadores.FALTAS_MENORES, 1);
+                System.out.println("    > PAGE FAULT: Página " + pageNumber + " do processo " + pcb.id + " zerada no frame " + frame + " (demand-zero)");
+                return true;
+            }
+            so.gp.tabela.conta(pcb, Contadores.FALTAS_MAIORES, 1);
+            so.disco.submete(so.pedidosDisco.pega().prepara(pcb, frame, pageNumber, TabelaPaginas.enderecoDisco(entrada), 0,
+                                                            TabelaPaginas.emSwap(entrada)));
+            return false;
+        }
+
+        // Huge page: ocupa os frames contíguos do bloco e os preenche numa única transferência
+        // (ou zera, se o grupo for todo demand-zero). Retorna true se já ficou mapeada.
+        private boolean solicitaCargaHuge(PCB pcb, int frameBase, int cabeca) {
+            int n = TabelaPaginas.PAGINAS_POR_HUGE;
+            for (int i = 0; i < n; i++) {
+                so.gerenteMem.ocupaFrame(frameBase + i, pcb, cabeca + i);
+            }
+            pcb.tabelaPaginas.setFrame(cabeca, frameBase);
+            if (pcb.tabelaPaginas.grupoDemandZero(cabeca)) {
+                int inicio = frameBase * hw.tamPg;
+                for (int i = inicio; i < inicio + n * hw.tamPg; i++) {
+                    Word w = hw.mem.pos[i];
+                    w.opc = Opcode.___;
+                    w.ra = -1;
+                    w.rb = -1;
+                    w.p = 0;
+                }
+                pcb.tabelaPaginas.mapeiaHuge(cabeca, frameBase);
+                so.gp.tabela.conta(pcb, Contadores.FALTAS_MENORES, 1);
+                System.out.println("    > PAGE FAULT: Huge page " + cabeca + "-" + (cabeca + n - 1) + " do processo " + pcb.id + " zerada nos frames " + frameBase + "-" + (frameBase + n - 1));
+                return true;
+            }
+            so.gp.tabela.conta(pcb, Contadores.FALTAS_MAIORES, 1);
+            IORequestVM req = so.pedidosDisco.pega().prepara(pcb, frameBase, cabeca, cabeca * hw.tamPg, 0, false);
+            req.numPaginas = n;
+            System.out.println("    > PAGE FAULT: Huge page " + cabeca + "-" + (cabeca + n - 1) + " do processo " + pcb.id + " nos frames " + frameBase + "-" + (frameBase + n - 1));
+            so.disco.submete(req);
+            return false;
+        }
+
+        // Salva contexto e bloqueia o processo que está na CPU
+        private void bloqueia(PCB pcb) {
+            so.gp.salvaContexto(pcb);
+            pcb.estado = ProcessState.BLOCKED;
+            so.gp.bloqueados.add(pcb);
+            so.gp.rodando = null;
+            so.liberaEscalonador();
+        }
+
+        private void desbloqueia(PCB pcb) {
+            if (so.gp.bloqueados.remove(pcb)) {
+                pcb.estado = ProcessState.READY;
+                so.gp.prontos.add(pcb);
+            }
+        }
+
+        void handleFimCargaDiscoVM(IORequestVM req) {
+            if (req != null) {
+                if (cargaDescartada(req)) {
+                    // Processo terminou (ou a página saiu do espaço, por sbrk) durante a carga
+                    for (int i = 0; i < req.numPaginas; i++) {
+                        so.gerenteMem.liberaFrame(req.frameNumber + i);
+                    }
+                    System.out.println("    > FIM CARGA DISCO: Página " + req.pageNumber + " do processo " + req.pcb.id + " descartada, frame " + req.frameNumber + " liberado");
+                    return;
+                }
+
+                // Atualiza tabela de páginas
+                if (req.numPaginas > 1) {
+                    req.pcb.tabelaPaginas.mapeiaHuge(req.pageNumber, req.frameNumber);
+                } else {
+                    req.pcb.tabelaPaginas.mapeia(req.pageNumber, req.frameNumber);
+                }
+                
+                // Move processo para ready (se ainda estiver bloqueado; pode ter sido removido)
+                faltaAtendida(req.pcb);
+                desbloqueia(req.pcb);
+                
+                System.out.println("    > FIM CARGA DISCO: Página " + req.pageNumber + " do processo " + req.pcb.id + " carregada no frame " + req.frameNumber);
+            }
+        }
+
+        // A carga não tem mais destino: o processo terminou, ou a entrada não aponta mais para
+        // o frame (página removida por sbrk)
+        private boolean cargaDescartada(IORequestVM req) {
+            TabelaPaginas t = req.pcb.tabelaPaginas;
+            if (req.pcb.estado == ProcessState.TERMINATED || req.pageNumber + req.numPaginas > t.tamanho()) {
+                return true;
+            }
+            long entrada = t.get(req.pageNumber);
+            return TabelaPaginas.frame(entrada) != req.frameNumber;
+        }
+
+        void handleFimSalvaDiscoVM(IORequestVM req) {
+            if (req != null) {
+                // Libera frame da vítima (a entrada já foi invalidada ao iniciar o despejo)
+                so.gerenteMem.liberaFrame(req.frameNumber);
+                req.pcb.tabelaPaginas.desligaBits(req.pageNumber, TabelaPaginas.BIT_SUJO);
+                
+                System.out.println("    > FIM SALVA DISCO: Página " + req.pageNumber + " do processo " + req.pcb.id + " salva, frame " + req.frameNumber + " liberado");
+                
+                // Processa page fault pendente (pulando processos que já terminaram)
+                FilaFaltasPendentes pendentes = so.filaPageFaultPendentes;
+                while (!pendentes.vazia() && pendentes.pcb().estado == ProcessState.TERMINATED) {
+                    pendentes.remove();
+                }
+                if (!pendentes.vazia()) {
+                    PCB pcb = pendentes.pcb();
+                    int pageNumber = pendentes.pagina();
+                    pendentes.remove();
+                    System.out.println("    > Processando page fault pendente do processo " + pcb.id + " página " + pageNumber);
+                    
+                    // Aloca frame para o page fault pendente
+                    pcb.tabelaPaginas.setFrame(pageNumber, req.frameNumber);
+                    so.gerenteMem.ocupaFrame(req.frameNumber, pcb, pageNumber);
+                    
+                    // Solicita carga da página (demand-zero é atendida na hora)
+                    if (solicitaCarga(pcb, req.frameNumber, pageNumber)) {
+                        faltaAtendida(pcb);
+                        desbloqueia(pcb);
+                    }
+                }
+            }
+        }
+    }
+
+    // ------------------- C H A M A D A S D E S I S T E M A - rotinas de tratamento
+    // ----------------------
+    public class SysCallHandling {
+        public static final int MAX_TRANSFERENCIA = 4096; // Palavras por readv/writev
+
+        private HW hw;
+        private SO so;
+
+        public SysCallHandling(HW _hw, SO _so) {
+            hw = _hw;
+            so = _so;
+        }
+
+        public void stop() {
+            System.out.println("    > SYSCALL STOP: Processo " + so.gp.rodando.id + " terminado.");
+            PCB processoTerminado = so.gp.rodando;
+            so.gp.contabilizaFatia(processoTerminado);
+            so.gp.rodando = null;
+            if (so.carga != null) {
+                so.carga.terminou(processoTerminado, false);
+            }
+            so.gp.desalocaProcesso(processoTerminado.id);
+            so.liberaEscalonador();
+        }
+
+        // Convenção: código da chamada em r8, argumentos em r9, r7 e r6, retorno em r8 (-1 = erro)
+        //   1 - lê um inteiro do console para o endereço r9
+        //   2 - escreve no console o conteúdo do endereço r9
+        //  11 - readv: lê r7 inteiros do console para [r9, r9 + r7); retorna r7
+        //  12 - writev: escreve no console o conteúdo de [r9, r9 + r7); retorna r7
+        //  (1 e 2 são readv/writev de uma palavra: uma única requisição por trap)
+        //   3 - sbrk: estende (r9 > 0) ou reduz (r9 < 0) o espaço de endereçamento em r9
+        //       palavras; retorna o break anterior (início da área nova)
+        //   4 - huge: usa huge pages na região [r9, r9 + r7) (palavras); retorna 0
+        //   5 - shmget: cria/localiza o segmento compartilhado de chave r9 com r7 palavras; retorna a chave
+        //   6 - shmat: anexa o segmento de chave r9; retorna o endereço base
+        //   7 - shmdt: desanexa o segmento anexado no endereço r9; retorna 0
+        //   8 - send: copia r6 palavras a partir do endereço r7 para a caixa de mensagens r9;
+        //       retorna 0, ou -1 se a caixa estiver cheia (não bloqueia)
+        //   9 - receive: copia a próxima mensagem da caixa r9 para o endereço r7 (até r6
+        //       palavras); retorna o número de palavras copiadas. Bloqueia se a caixa estiver vazia.
+        //  10 - sleep: bloqueia o processo por r9 ticks do relógio (Relogio.TICK_MS); retorna 0
+        public void handle() {
+            PCB processoAtual = so.gp.rodando;
+            int tipoChamada = hw.cpu.reg[8];
+            EventoSyscall evento = new EventoSyscall();
+            if (evento.isEnabled()) {
+                evento.pid = processoAtual.id;
+                evento.codigo = tipoChamada;
+                evento.chamada = Contadores.CHAMADAS[tipoChamada > 0 && tipoChamada < Contadores.CHAMADAS.length ? tipoChamada : 0];
+                evento.commit();
+            }
+            switch (tipoChamada) {
+                case 1:
+                case 2:
+                case 11:
+                case 12:
+                    // Conta sozinha: a SYSCALL é reexecutada após faltas no buffer e na volta da leitura
+                    transferencia(processoAtual, tipoChamada, hw.cpu.reg[9], tipoChamada > 10 ? hw.cpu.reg[7] : 1);
+                    return;
+                default:
+                    so.gp.tabela.conta(processoAtual, Contadores.chamada(tipoChamada), 1);
+                    break;
+            }
+            switch (tipoChamada) {
+                case 3:
+                    int anterior = so.gp.sbrk(processoAtual, hw.cpu.reg[9]);
+                    System.out.println("    > TRAP: Processo " + processoAtual.id + " sbrk(" + hw.cpu.reg[9] + ") -> " + anterior);
+                    hw.cpu.reg[8] = anterior;
+                    break;
+                case 4:
+                    int inicio = hw.cpu.reg[9];
+                    int tamanho = hw.cpu.reg[7];
+                    if (inicio < 0 || tamanho <= 0) {
+                        hw.cpu.reg[8] = -1;
+                    } else {
+                        processoAtual.tabelaPaginas.marcaHuge(inicio / hw.tamPg, (int) (((long) inicio + tamanho) / hw.tamPg));
+                        hw.cpu.reg[8] = 0;
+                    }
+                    System.out.println("    > TRAP: Processo " + processoAtual.id + " huge(" + inicio + ", " + tamanho + ") -> " + hw.cpu.reg[8]);
+                    break;
+                case 5:
+                case 6:
+                case 7:
+                    int argumento = hw.cpu.reg[9];
+                    int resultado;
+                    if (tipoChamada == 5) {
+                        resultado = so.gp.shmget(argumento, hw.cpu.reg[7]);
+                    } else if (tipoChamada == 6) {
+                        resultado = so.gp.shmat(processoAtual, argumento);
+                    } else {
+                        resultado = so.gp.shmdt(processoAtual, argumento);
+                    }
+                    String[] nomes = { "shmget", "shmat", "shmdt" };
+                    System.out.println("    > TRAP: Processo " + processoAtual.id + " " + nomes[tipoChamada - 5] + "(" + argumento + ") -> " + resultado);
+                    hw.cpu.reg[8] = resultado;
+                    break;
+                case 8:
+                    send(processoAtual);
+                    break;
+                case 9:
+                    receive(processoAtual);
+                    break;
+                case 10:
+                    int ticks = hw.cpu.reg[9];
+                    hw.cpu.reg[8] = 0;
+                    if (ticks <= 0) {
                         break;
-                    case DATA:
-                        irpt = Interrupts.intInstrucaoInvalida;
-                        break;
-                    case SYSCALL:
-                        sysCall.handle();
-                        pc++;
-                        break;
-                    case STOP:
-                        sysCall.stop();
-                        cpuStop = true;
-                        break;
-                    default:
-                        irpt = Interrupts.intInstrucaoInvalida;
-                        break;
+                    }
+                    so.gp.salvaContexto(processoAtual);
+                    processoAtual.estado = ProcessState.BLOCKED;
+                    so.gp.bloqueados.add(processoAtual);
+                    so.gp.rodando = null;
+                    so.temporizadores.arma(processoAtual, ticks);
+                    so.liberaEscalonador();
+                    break;
+                default:
+                    System.out.println("    > TRAP: Chamada de sistema inválida: " + tipoChamada);
+                    so.ih.handle(Interrupts.intInstrucaoInvalida);
+                    break;
+            }
+        }
+
+        // E/S de console de um bloco inteiro numa só requisição. Faltas de página no buffer são
+        // atendidas antes (a SYSCALL é reexecutada). Na leitura, o processo também reexecuta a
+        // SYSCALL ao acordar, e só então os dados lidos são copiados para a sua memória.
+        // Só readv/writev devolvem resultado em r8 (palavras transferidas ou -1); as chamadas
+        // 1 e 2 deixam r8 intacto, e um endereço inválido nelas é fatal, como num LDD/STD.
+        private void transferencia(PCB processoAtual, int codigo, int endereco, int tamanho) {
+            boolean vetorial = codigo > 10;
+            int tipo = vetorial ? codigo - 10 : codigo; // readv/writev -> read/write
+            TabelaPaginas t = processoAtual.tabelaPaginas;
+            if (!faixaValida(t, endereco, tamanho, MAX_TRANSFERENCIA)) {
+                so.gp.tabela.conta(processoAtual, Contadores.chamada(codigo), 1);
+                descartaLeitura(processoAtual);
+                if (vetorial) {
+                    hw.cpu.reg[8] = -1;
+                } else {
+                    hw.cpu.enderecoInvalidoEmSyscall();
+                }
+                return;
+            }
+            if (!residente(t, endereco, tamanho)) {
+                return; // Page fault; a SYSCALL é reexecutada depois
+            }
+            if (tipo == 1 && processoAtual.leituraConcluida != null) {
+                // Volta de uma leitura concluída: copia os dados para o buffer do processo
+                IORequest lida = processoAtual.leituraConcluida;
+                int copiadas = Math.min(tamanho, lida.tamanho);
+                for (int i = 0; i < copiadas; i++) {
+                    Word w = hw.mem.pos[fisico(t, endereco + i, true)];
+                    w.opc = Opcode.DATA;
+                    w.p = lida.dados[i];
+                }
+                descartaLeitura(processoAtual);
+                if (vetorial) {
+                    hw.cpu.reg[8] = copiadas;
+                }
+                return;
+            }
+            so.gp.tabela.conta(processoAtual, Contadores.chamada(codigo), 1);
+            IORequest req = so.pedidosConsole.pega().prepara(processoAtual, endereco, tipo, tamanho);
+            if (tipo == 2) {
+                for (int i = 0; i < tamanho; i++) {
+                    req.dados[i] = hw.mem.pos[fisico(t, endereco + i, false)].p;
+                }
+                if (vetorial) {
+                    hw.cpu.reg[8] = tamanho;
+                }
+            } else {
+                hw.cpu.reiniciaSyscall();
+            }
+            so.gp.salvaContexto(processoAtual);
+            System.out.println("    > TRAP: Processo " + processoAtual.id + " solicitou E/S (" + tamanho + " palavra(s)).");
+            processoAtual.estado = ProcessState.BLOCKED;
+            so.gp.bloqueados.add(processoAtual);
+            so.gp.rodando = null;
+            so.console.submete(req);
+            so.liberaEscalonador();
+        }
+
+        // Devolve ao reciclador a leitura já consumida (ou abandonada) pelo processo
+        private void descartaLeitura(PCB processoAtual) {
+            IORequest lida = processoAtual.leituraConcluida;
+            if (lida != null) {
+                processoAtual.leituraConcluida = null;
+                so.pedidosConsole.devolve(lida);
+            }
+        }
+
+        private void send(PCB processoAtual) {
+            CaixaMensagens caixa = so.gp.caixa(hw.cpu.reg[9]);
+            int endereco = hw.cpu.reg[7];
+            int tamanho = hw.cpu.reg[6];
+            TabelaPaginas t = processoAtual.tabelaPaginas;
+            if (caixa == null || !faixaValida(t, endereco, tamanho, CaixaMensagens.MAX_PALAVRAS)) {
+                hw.cpu.reg[8] = -1;
+                return;
+            }
+            if (!residente(t, endereco, tamanho)) {
+                return; // Page fault; a SYSCALL é reexecutada depois
+            }
+            long pos = caixa.reserva();
+            if (pos == -1) {
+                hw.cpu.reg[8] = -1; // Cheia: o remetente tenta de novo
+                return;
+            }
+            // Copia direto para o buffer da posição reservada, sem alocar
+            int[] mensagem = caixa.buffer(pos);
+            for (int i = 0; i < tamanho; i++) {
+                mensagem[i] = hw.mem.pos[fisico(t, endereco + i, false)].p;
+            }
+            caixa.publica(pos, tamanho);
+            hw.cpu.reg[8] = 0;
+            // Acorda um receptor bloqueado nesta caixa pelo caminho de interrupção
+            PCB receptor = caixa.proximoReceptor();
+            if (receptor != null) {
+                hw.cpu.setIOInterrupt(receptor);
+                so.acordaCPU();
+            }
+        }
+
+        private void receive(PCB processoAtual) {
+            CaixaMensagens caixa = so.gp.caixa(hw.cpu.reg[9]);
+            int endereco = hw.cpu.reg[7];
+            int tamanho = hw.cpu.reg[6];
+            TabelaPaginas t = processoAtual.tabelaPaginas;
+            if (caixa == null || !faixaValida(t, endereco, tamanho, CaixaMensagens.MAX_PALAVRAS)) {
+                hw.cpu.reg[8] = -1;
+                return;
+            }
+            if (!residente(t, endereco, tamanho)) {
+                return; // Page fault; a SYSCALL é reexecutada depois
+            }
+            long pos = caixa.retira();
+            if (pos == -1) {
+                if (caixa.aguarda(processoAtual)) {
+                    // Caixa vazia: bloqueia; ao ser acordado, o processo reexecuta a SYSCALL
+                    hw.cpu.reiniciaSyscall();
+                    so.gp.salvaContexto(processoAtual);
+                    processoAtual.estado = ProcessState.BLOCKED;
+                    so.gp.bloqueados.add(processoAtual);
+                    so.gp.rodando = null;
+                    so.liberaEscalonador();
+                    return;
+                }
+                pos = caixa.retira(); // Chegou mensagem enquanto se registrava
+                if (pos == -1) {
+                    hw.cpu.reiniciaSyscall(); // Outro receptor levou; tenta de novo
+                    return;
                 }
             }
-            
-            // Controle do Quantum - Preempção
-            instrucoesExecutadas++;
-            if (instrucoesExecutadas >= DELTA_INSTRUCOES) {
-                irpt = Interrupts.intFimDeFatiaDeTempo;
+            int[] mensagem = caixa.buffer(pos);
+            int copiadas = Math.min(tamanho, caixa.tamanho(pos));
+            for (int i = 0; i < copiadas; i++) {
+                Word w = hw.mem.pos[fisico(t, endereco + i, true)];
+                w.opc = Opcode.DATA;
+                w.p = mensagem[i];
+            }
+            caixa.libera(pos);
+            hw.cpu.reg[8] = copiadas;
+        }
+
+        private boolean faixaValida(TabelaPaginas t, int inicio, int tamanho, int maximo) {
+            return inicio >= 0 && tamanho > 0 && tamanho <= maximo
+                    && (long) inicio + tamanho <= (long) t.tamanho() * hw.tamPg;
+        }
+
+        // Verifica se [inicio, inicio + tamanho) está na memória. Se faltar uma página, provoca
+        // a falta dela (a SYSCALL é reexecutada depois de atendida) e retorna false.
+        private boolean residente(TabelaPaginas t, int inicio, int tamanho) {
+            int ultima = (inicio + tamanho - 1) / hw.tamPg;
+            for (int pagina = inicio / hw.tamPg; pagina <= ultima; pagina++) {
+                if (t.resolve(pagina) == -1) {
+                    hw.cpu.faltaEmSyscall(Math.max(inicio, pagina * hw.tamPg));
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Endereço físico de uma página residente, marcando R (e D, na escrita)
+        private int fisico(TabelaPaginas t, int endLogico, boolean escrita) {
+            int pagina = endLogico / hw.tamPg;
+            int entrada = t.resolve(pagina);
+            t.ligaBits(entrada, escrita ? TabelaPaginas.BIT_REFERENCIADO | TabelaPaginas.BIT_SUJO : TabelaPaginas.BIT_REFERENCIADO);
+            return (TabelaPaginas.frame(t.get(entrada)) + (pagina - entrada)) * hw.tamPg + endLogico % hw.tamPg;
+        }
+    }
+
+    // ------------------ U T I L I T A R I O S D O S I S T E M A
+    // -----------------------------------------
+    public class Utilities {
+        private HW hw;
+        private GerenteMemoria gm;
+
+        public Utilities(HW _hw, GerenteMemoria _gm) {
+            hw = _hw;
+            gm = _gm;
+        }
+
+        public void dump(Word w) {
+            System.out.print("[ ");
+            System.out.print(w.opc);
+            System.out.print(", ");
+            System.out.print(w.ra);
+            System.out.print(", ");
+            System.out.print(w.rb);
+            System.out.print(", ");
+            System.out.print(w.p);
+            System.out.println("  ] ");
+        }
+
+        public void dump(int ini, int fim) {
+            Word[] m = hw.mem.pos;
+            for (int i = ini; i < fim; i++) {
+                System.out.print(i);
+                System.out.print(":  ");
+                dump(m[i]);
+            }
+        }
+    }
+
+    // ------------------- RODA DE TEMPORIZAÇÃO HIERÁRQUICA -------------------
+    // NIVEIS rodas de SLOTS posições; a roda n conta em unidades de SLOTS^n ticks. Um
+    // temporizador vai para a roda menor que alcança o seu vencimento, numa lista duplamente
+    // encadeada: armar e cancelar são O(1). A cada tick expira a posição corrente da roda 0;
+    // quando a roda 0 dá a volta, a posição seguinte da roda 1 é redistribuída (cascata), e
+    // assim por diante. Cada processo tem no máximo um despertador, então o próprio PCB é o
+    // nó da lista (como na lista de bloqueados). Os vencidos de um avanço são devolvidos
+    // juntos, num vetor reaproveitado: nenhum sleep aloca memória.
+    public class RodaTemporizacao {
+        public static final int BITS_NIVEL = 6;
+        public static final int SLOTS = 1 << BITS_NIVEL;
+        public static final int NIVEIS = 4;
+        public static final long MAX_TICKS = (1L << (BITS_NIVEL * NIVEIS)) - 1;
+        private static final int MASCARA = SLOTS - 1;
+
+        private final PCB[] rodas = new PCB[NIVEIS * SLOTS]; // Cabeças das listas, por nivel * SLOTS + slot
+        private final Relogio relogio;
+        private long agora;              // Último tick processado
+        private volatile int pendentes;  // Temporizadores armados (lido pela ThreadRelogio)
+        private PCB[] vencidos = new PCB[16]; // Lote do último avanço (cresce se preciso)
+
+        // Estatísticas
+        private long armados;
+        private long expirados;
+        private long lotes;
+        private int maiorLote;
+
+        public RodaTemporizacao(Relogio _relogio) {
+            this.relogio = _relogio;
+        }
+
+        public int pendentes() {
+            return pendentes;
+        }
+
+        // Arma o despertador do processo para daqui a 'ticks' ticks do relógio
+        public synchronized void arma(PCB pcb, long ticks) {
+            if (pcb.posicaoRoda != -1) {
+                return; // Já armado
+            }
+            if (pendentes == 0) {
+                agora = Math.max(agora, relogio.ticks()); // Nada a vencer no intervalo
+            }
+            pcb.vencimento = relogio.ticks() + Math.min(ticks, MAX_TICKS);
+            insere(pcb);
+            pendentes++;
+            armados++;
+        }
+
+        public synchronized void cancela(PCB pcb) {
+            if (pcb.posicaoRoda != -1) {
+                retira(pcb);
+                pendentes--;
+            }
+        }
+
+        // Processa os ticks até 'ate' e devolve quantos despertadores venceram; os processos
+        // ficam em vencido(0) .. vencido(n - 1) até o próximo avanço
+        public synchronized int avanca(long ate) {
+            int n = 0;
+            while (agora < ate) {
+                if (pendentes == 0) {
+                    agora = ate;
+                    break;
+                }
+                agora++;
+                if ((agora & MASCARA) == 0) {
+                    cascata(1);
+                }
+                int posicao = (int) (agora & MASCARA);
+                PCB pcb = rodas[posicao];
+                rodas[posicao] = null;
+                while (pcb != null) {
+                    PCB proximo = pcb.proximoRoda;
+                    pcb.anteriorRoda = pcb.proximoRoda = null;
+                    pcb.posicaoRoda = -1;
+                    if (n == vencidos.length) {
+                        vencidos = Arrays.copyOf(vencidos, n * 2);
+                    }
+                    vencidos[n++] = pcb;
+                    pendentes--;
+                    pcb = proximo;
+                }
+            }
+            if (n > 0) {
+                expirados += n;
+                lotes++;
+                maiorLote = Math.max(maiorLote, n);
+            }
+            return n;
+        }
+
+        public synchronized PCB vencido(int i) {
+            PCB pcb = vencidos[i];
+            vencidos[i] = null; // Não segura o processo depois de entregue
+            return pcb;
+        }
+
+        // Redistribui a posição corrente da roda 'nivel' nas rodas menores
+        private void cascata(int nivel) {
+            if (nivel >= NIVEIS) {
+                return;
+            }
+            int slot = (int) ((agora >> (BITS_NIVEL * nivel)) & MASCARA);
+            if (slot == 0) {
+                cascata(nivel + 1);
+            }
+            int posicao = nivel * SLOTS + slot;
+            PCB pcb = rodas[posicao];
+            rodas[posicao] = null;
+            while (pcb != null) {
+                PCB proximo = pcb.proximoRoda;
+                pcb.anteriorRoda = pcb.proximoRoda = null;
+                insere(pcb);
+                pcb = proximo;
+            }
+        }
+
+        private void insere(PCB pcb) {
+            long delta = Math.max(0, pcb.vencimento - agora);
+            int nivel = 0;
+            while (nivel < NIVEIS - 1 && delta >= (1L << (BITS_NIVEL * (nivel + 1)))) {
+                nivel++;
+            }
+            int slot = (int) ((pcb.vencimento >> (BITS_NIVEL * nivel)) & MASCARA);
+            if (delta == 0) {
+                slot = (int) (agora & MASCARA); // Vence no tick corrente (durante a cascata)
+            }
+            int posicao = nivel * SLOTS + slot;
+            pcb.posicaoRoda = posicao;
+            pcb.proximoRoda = rodas[posicao];
+            if (pcb.proximoRoda != null) {
+                pcb.proximoRoda.anteriorRoda = pcb;
+            }
+            rodas[posicao] = pcb;
+        }
+
+        private void retira(PCB pcb) {
+            if (pcb.anteriorRoda != null) {
+                pcb.anteriorRoda.proximoRoda = pcb.proximoRoda;
+            } else {
+                rodas[pcb.posicaoRoda] = pcb.proximoRoda;
+            }
+            if (pcb.proximoRoda != null) {
+                pcb.proximoRoda.anteriorRoda = pcb.anteriorRoda;
+            }
+            pcb.anteriorRoda = pcb.proximoRoda = null;
+            pcb.posicaoRoda = -1;
+        }
+
+        public synchronized void info() {
+            System.out.println("=== TEMPORIZADORES ===");
+            System.out.println("Tick: " + Relogio.TICK_MS + " ms | relógio: " + relogio.ticks() + " | roda: " + agora);
+            System.out.println("Pendentes: " + pendentes + " | armados: " + armados + " | expirados: " + expirados
+                    + " | lotes: " + lotes + " | maior lote: " + maiorLote);
+        }
+    }
+
+    // ------------------- POLÍTICA DE QUANTUM -------------------
+    // O quantum pode ser contado em instruções ou em nanossegundos (via Timer). No modo
+    // adaptativo, o valor base é uma latência alvo dividida entre os processos prontos:
+    // fatias longas com fila curta, fatias curtas (até o mínimo) com fila longa.
+    public class PoliticaQuantum {
+        public static final long MIN_INSTRUCOES_PADRAO = 4;
+        public static final long MIN_NANOS_PADRAO = 20_000;
+
+        private boolean porTempo = false;
+        private boolean adaptativo = true;
+        private long base = 32;                      // Fatia fixa ou latência alvo (modo adaptativo)
+        private long minimo = MIN_INSTRUCOES_PADRAO;
+        private GerenteProcessos gp;
+
+        public PoliticaQuantum(GerenteProcessos _gp) {
+            this.gp = _gp;
+        }
+
+        public long calcula() {
+            if (!adaptativo) {
+                return base;
+            }
+            long fatia = base / (gp.prontos.size() + 1);
+            return Math.max(fatia, minimo);
+        }
+
+        public boolean porTempo() {
+            return porTempo;
+        }
+
+        public void configura(boolean _porTempo, long _base) {
+            if (_base <= 0) {
+                System.out.println("Erro: Quantum deve ser positivo.");
+                return;
+            }
+            if (_porTempo != porTempo) {
+                minimo = _porTempo ? MIN_NANOS_PADRAO : MIN_INSTRUCOES_PADRAO;
+            }
+            porTempo = _porTempo;
+            base = _base;
+            minimo = Math.min(minimo, base);
+        }
+
+        public void setAdaptativo(boolean _adaptativo) {
+            adaptativo = _adaptativo;
+        }
+
+        public void setMinimo(long _minimo) {
+            if (_minimo <= 0) {
+                System.out.println("Erro: Quantum mínimo deve ser positivo.");
+                return;
             }
+            minimo = _minimo;
+        }
+
+        public void info() {
+            String unidade = porTempo ? "ns" : "instruções";
+            System.out.println("=== QUANTUM ===");
+            System.out.println("Modo: " + (porTempo ? "tempo (timer)" : "instruções"));
+            System.out.println("Adaptativo: " + (adaptativo ? "sim" : "não"));
+            System.out.println((adaptativo ? "Latência alvo: " : "Fatia fixa: ") + base + " " + unidade);
+            System.out.println("Mínimo: " + minimo + " " + unidade);
+            System.out.println("Fatia atual: " + calcula() + " " + unidade + " (" + gp.prontos.size() + " prontos)");
+        }
+    }
+
+    public class SO {
+        public InterruptHandling ih;
+        public SysCallHandling sc;
+        public Utilities utils;
+        public GerenteProcessos gp;
+        public HW hw;
+        public GerenteMemoria gerenteMem;
+        public PoliticaQuantum quantum;
+
+        // Estruturas de sincronização
+        public Semaphore semaCPU = new Semaphore(0);
+        // Modo threads: com a CPU ociosa, a thread do escalonador (despacho) e a da CPU
+        // (interrupções, operações da CLI) agiriam juntas sobre o kernel; esta trava as alterna
+        public final Object trava = new Object();
+        public Semaphore semaEscalonador = new Semaphore(0);
+        
+        // Filas
+        public FilaFaltasPendentes filaPageFaultPendentes = new FilaFaltasPendentes();
+        // Pedidos reaproveitados: uma E/S ou falta de página não cria objetos no caminho comum
+        public final Reciclador<IORequest> pedidosConsole = new Reciclador<>(256, () -> new IORequest(null, 0, 0, 0));
+        public final Reciclador<IORequestVM> pedidosDisco = new Reciclador<>(1024, () -> new IORequestVM(null, 0, 0, 0, 0));
+        
+        // Threads
+        public ThreadEscalonador escalonador;
+        public ThreadCPU cpuThread;
+        public ThreadRelogio relogio;
+
+        // Dispositivos (cada um com suas threads de serviço)
+        public DispositivoConsole console;
+        public EntradaConsole entrada; // Fonte única de entrada (stdin, arquivo, roteiros)
+        public DispositivoDisco disco;
+        public List<Dispositivo> dispositivos = new ArrayList<>();
+
+        // Temporizadores do kernel (sleep)
+        public RodaTemporizacao temporizadores;
+
+        // Simulação de eventos discretos (-sim); null no modo com threads
+        public Simulador sim;
+
+        // Kernel em laço único (-kernel laco); null no modo com threads
+        public LacoKernel laco;
+
+        // Uma thread por processo (-kernel vthreads); null nos outros modos
+        public ThreadsPorProcesso porProcesso;
+
+        // Gerador de carga (-carga) que recebe os processos terminados; null se nenhum
+        public Carga carga;
+
+        // Histogramas de latência (comando lat)
+        public final Latencias latencias = new Latencias();
+
+        // Espera na fila de prontos até ganhar a CPU (todos os modos)
+        private long despachos;
+        private long esperaTotalNs;
+        private long esperaMaximaNs;
+
+        public SO(HW hw, GerenteMemoria gm, int tamPg) {
+            this.hw = hw;
+            this.gerenteMem = gm;
+            utils = new Utilities(hw, gm);
+            gp = new GerenteProcessos(hw, gm, tamPg, utils, this);
+            quantum = new PoliticaQuantum(gp);
+            ih = new InterruptHandling(this);
+            sc = new SysCallHandling(hw, this);
+            hw.cpu.setAddressOfHandlers(ih, sc);
             
-            // --------------------------------------------------------------------------------------------------
-            // VERIFICA INTERRUPÇÃO
-            if (irpt != Interrupts.noInterrupt) {
-                ih.handle(irpt);
-                cpuStop = true;
+            escalonador = new ThreadEscalonador();
+            cpuThread = new ThreadCPU();
+            relogio = new ThreadRelogio();
+            temporizadores = new RodaTemporizacao(hw.relogio);
+
+            console = new DispositivoConsole();
+            entrada = new EntradaConsole();
+            disco = new DispositivoDisco();
+            dispositivos.add(console);
+            dispositivos.add(disco);
+        }
+
+        // Acorda quem executa a CPU. No modo com threads, a ThreadCPU; no laço, a thread do
+        // kernel (se estiver estacionada). Na simulação a CPU nunca dorme.
+        public void acordaCPU() {
+            if (laco != null) {
+                laco.acorda();
+            } else if (porProcesso != null) {
+                porProcesso.acorda();
+            } else if (sim == null) {
+                semaCPU.release();
+            }
+        }
+
+        // Executa a operação no contexto do kernel e espera ela terminar. Criar e remover
+        // processos (ou segmentos compartilhados) mexe em frames, na FIFO de vitimização e nos
+        // pedidos reciclados, que só o kernel toca sem sincronização. No -sim a CLI já é o kernel; no laço a operação vai
+        // para a fila de comandos (ou roda direto, se já estiver no laço); nos modos com
+        // threads vira um pedido concluído na fila da CPU (OperacaoKernel).
+        public void noKernel(Runnable operacao) {
+            if (sim != null || (laco != null && laco.naThread())) {
+                operacao.run();
+            } else if (laco != null) {
+                laco.executaEsperando(operacao);
+            } else {
+                OperacaoKernel op = new OperacaoKernel(operacao);
+                if (hw.cpu.conclui(op)) {
+                    acordaCPU();
+                }
+                op.espera();
+            }
+        }
+
+        // Pede um despacho. O laço e a simulação despacham sozinhos quando a CPU fica livre.
+        public void liberaEscalonador() {
+            if (laco == null && sim == null && porProcesso == null) {
+                semaEscalonador.release();
+            }
+        }
+
+        // Coloca o próximo pronto na CPU, se ela estiver livre
+        public void despacha() {
+            synchronized (trava) {
+                if (gp.rodando != null) {
+                    return; // CPU já ocupada (liberação redundante)
+                }
+                PCB proximo = gp.prontos.pollFirst();
+                if (proximo != null) {
+                    colocaNaCPU(proximo);
+                    acordaCPU();
+                }
+            }
+        }
+
+        // Carrega o contexto antes de publicar o processo como rodando
+        public void colocaNaCPU(PCB pcb) {
+            long agora = agora();
+            long espera = agora - pcb.prontoDesde;
+            gp.tabela.conta(pcb, Contadores.PRONTO_NS, espera);
+            latencias.esperaPronto.registra(espera);
+            EventoDespacho evento = new EventoDespacho();
+            if (evento.isEnabled()) {
+                evento.pid = pcb.id;
+                evento.espera = espera;
+                evento.commit();
+            }
+            gp.tabela.conta(pcb, Contadores.TROCAS_CONTEXTO, 1);
+            pcb.naCPUDesde = agora;
+            despachos++;
+            esperaTotalNs += espera;
+            esperaMaximaNs = Math.max(esperaMaximaNs, espera);
+            pcb.estado = ProcessState.RUNNING;
+            gp.tabela.carregaRegistradores(pcb.id, hw.cpu.getReg());
+            hw.cpu.setContext(pcb.pc, pcb.tabelaPaginas);
+            hw.cpu.renovaFatia(quantum.calcula(), quantum.porTempo());
+            gp.rodando = pcb;
+        }
+
+        // Modo -kernel laco: uma thread executa CPU, escalonamento, relógio e comandos
+        public void ativaLaco() {
+            laco = new LacoKernel();
+        }
+
+        // Modo -kernel vthreads: cada processo na sua thread, disputando as CPUs
+        public void ativaThreadsPorProcesso() {
+            porProcesso = new ThreadsPorProcesso();
+        }
+
+        public void infoKernel() {
+            System.out.println("=== KERNEL ===");
+            if (sim != null) {
+                System.out.println("Modo: simulação (relógio virtual, thread da CLI)");
+            } else if (laco != null) {
+                System.out.println("Modo: laço único (uma thread do kernel + threads dos dispositivos)");
+                laco.info();
+            } else if (porProcesso != null) {
+                System.out.println("Modo: uma thread por processo (CPU entregue ao primeiro pronto)");
+                porProcesso.info();
+            } else {
+                System.out.println("Modo: threads (escalonador, CPU e relógio, coordenados por semáforos)");
+            }
+            System.out.println("Interrupções de dispositivo: " + hw.cpu.getInterrupcoesDispositivo()
+                    + " | conclusões: " + hw.cpu.getConclusoesAtendidas());
+            System.out.printf("Despachos: %d | espera na fila de prontos: média %.1f us, máxima %.1f us%n",
+                    despachos, despachos == 0 ? 0.0 : esperaTotalNs / 1e3 / despachos, esperaMaximaNs / 1e3);
+        }
+
+        // Instante corrente em ns: o relógio virtual no modo -sim, senão System.nanoTime
+        public long agora() {
+            return sim != null ? sim.agora() : System.nanoTime();
+        }
+
+        // Modo -sim: tudo passa a rodar no relógio virtual, na thread da CLI
+        public void ativaSimulacao() {
+            sim = new Simulador();
+            hw.timer.setSimulador(sim);
+        }
+
+        public Dispositivo dispositivo(String nome) {
+            for (Dispositivo d : dispositivos) {
+                if (d.nome.equals(nome)) {
+                    return d;
+                }
+            }
+            return null;
+        }
+
+        public void infoDispositivos() {
+            System.out.println("=== DISPOSITIVOS ===");
+            System.out.printf("%-8s %7s %9s %10s %6s %10s %9s%n", "nome", "threads", "pedidos",
+                    "concluídos", "lotes", "despertou", "na fila");
+            for (Dispositivo d : dispositivos) {
+                d.info();
             }
+            long interrupcoes = hw.cpu.getInterrupcoesDispositivo();
+            long conclusoes = hw.cpu.getConclusoesAtendidas();
+            System.out.printf("Interrupções de dispositivo: %d para %d conclusões (%.2f por interrupção)%n",
+                    interrupcoes, conclusoes, interrupcoes == 0 ? 0.0 : (double) conclusoes / interrupcoes);
+            System.out.println("DMA: " + hw.dma.getTransferencias() + " transferências, "
+                    + hw.dma.getPalavras() + " palavras");
+            System.out.println("Pedidos de console: " + pedidosConsole.info());
+            System.out.println("Pedidos de disco: " + pedidosDisco.info());
         }
     }
 
-    // ------------------ C P U - fim
-    // -----------------------------------------------------------------------
+    // ------------------- S I S T E M A
+    // --------------------------------------------------------------------
 
-    // ------------------- HW - constituido de CPU e MEMORIA
-    // -----------------------------------------------
-    public class HW {
-        public Memory mem;
-        public CPU cpu;
-        public int tamPg;
+    public HW hw;
+    public SO so;
+    public Programs progs;
+    public GerenteMemoria gerenteMem;
+    private int tamPagina;
+    private int tamMemoria;
 
-        public HW(int tamMem, int _tamPg) {
-            mem = new Memory(tamMem);
-            tamPg = _tamPg;
-            cpu = new CPU(mem, true, _tamPg);
+    public Sistema(int tamMem, int _tamPagina) {
+        this(tamMem, _tamPagina, 0);
+    }
+
+    public Sistema(int tamMem, int _tamPagina, int tamEspacoVirtual) {
+        this.tamPagina = _tamPagina;
+        this.tamMemoria = tamMem;
+        hw = new HW(tamMem, _tamPagina);
+        gerenteMem = new GerenteMemoria(tamMem, _tamPagina);
+        so = new SO(hw, gerenteMem, _tamPagina);
+        so.gp.setEspacoVirtual(tamEspacoVirtual);
+        hw.cpu.setUtilities(so.utils);
+        progs = new Programs();
+    }
+
+    // Inicia as threads do modo escolhido (no modo -sim tudo roda na thread de quem chama)
+    public void iniciaThreads() {
+        if (so.sim != null) {
+            return;
+        }
+        if (so.laco != null) {
+            for (Dispositivo d : so.dispositivos) {
+                d.inicia();
+            }
+            new Thread(so.laco, "kernel").start();
+            return;
+        }
+        if (so.porProcesso != null) {
+            // Sem escalonador nem ThreadCPU: as threads dos processos disputam a CPU
+            so.porProcesso.inicia();
+            new Thread(so.relogio).start();
+            for (Dispositivo d : so.dispositivos) {
+                d.inicia();
+            }
+            return;
+        }
+        Thread threadEscalonador = new Thread(so.escalonador);
+        Thread threadCPU = new Thread(so.cpuThread);
+        Thread threadRelogio = new Thread(so.relogio);
+        
+        threadEscalonador.start();
+        threadCPU.start();
+        threadRelogio.start();
+        for (Dispositivo d : so.dispositivos) {
+            d.inicia();
+        }
+    }
+
+    // CLI interativa
+    public void runCLI() {
+        System.out.println("Sistema Operacional com Memória Virtual iniciado.");
+        System.out.println("Digite 'help' para comandos.");
+        
+        while (true) {
+            if (so.sim != null && so.sim.automatico()) {
+                so.sim.executa(); // Roda o que o último comando disparou até o sistema ficar ocioso
+            }
+            System.out.print("> ");
+            String line;
+            try {
+                line = so.entrada.leLinha();
+            } catch (IOException e) {
+                line = null;
+            }
+            if (line == null) {
+                System.out.println("Fim da entrada. Encerrando sistema...");
+                System.exit(0);
+            }
+            executaLinha(line);
+        }
+    }
+
+    // Modo lote (-script / -c): executa os comandos em ordem, como se digitados, espera todos
+    // os processos terminarem e encerra. Linhas vazias e comentários (#) são ignorados.
+    public void executaLote(List<String> comandos) {
+        for (String comando : comandos) {
+            int comentario = comando.indexOf('#');
+            String line = (comentario >= 0 ? comando.substring(0, comentario) : comando).trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (so.sim != null && so.sim.automatico()) {
+                so.sim.executa();
+            }
+            System.out.println("> " + line);
+            executaLinha(line);
         }
+        boolean terminou = esperaProcessos(0);
+        System.out.println(terminou ? "Lote concluído: nenhum processo ativo. Encerrando sistema..."
+                : "Lote encerrado com " + so.gp.tabela.size() + " processo(s) que não terminam. Encerrando sistema...");
+        System.exit(0);
     }
 
-    // --------------------H A R D W A R E - fim
-    // -------------------------------------------------------------
+    // Uma linha da CLI ou do lote: valores digitados, a barreira 'espera' ou um comando
+    private void executaLinha(String line) {
+        line = line.trim();
+        if (line.isEmpty()) {
+            return;
+        }
 
-    // ------------------- THREADS DO SISTEMA -------------------
+        // Linha só com números: valores digitados para o console dos processos
+        int[] valores = so.entrada.numeros(line);
+        if (valores != null) {
+            so.entrada.digita(valores);
+            return;
+        }
 
-    public class ThreadEscalonador implements Runnable {
-        @Override
-        public void run() {
-            while(true) {
-                try {
-                    so.semaEscalonador.acquire();
-                    PCB proximo = so.gp.prontos.pollFirst();
-                    if (proximo != null) {
-                        proximo.estado = ProcessState.RUNNING;
-                        so.gp.rodando = proximo;
-                        hw.cpu.setContext(proximo.pc, proximo.reg, proximo.tabelaPaginas);
-                        so.semaCPU.release();
-                    } else {
-                        so.gp.rodando = null;
-                    }
-                } catch (InterruptedException e) { e.printStackTrace(); }
+        // A barreira roda na thread da CLI: no modo laço, esperar dentro do kernel o travaria
+        String[] args = line.split("\\s+");
+        if (args[0].equalsIgnoreCase("espera")) {
+            try {
+                long limiteMs = args.length > 1 ? Long.parseLong(args[1]) : 0;
+                long inicio = System.nanoTime();
+                if (esperaProcessos(limiteMs)) {
+                    System.out.printf("ESPERA: Nenhum processo ativo (%.1f ms).%n", (System.nanoTime() - inicio) / 1e6);
+                } else {
+                    System.out.println("ESPERA: " + so.gp.tabela.size() + " processo(s) ainda ativo(s).");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Uso: espera [ms]");
             }
+            return;
+        }
+        
+        // No modo laço o comando roda na thread do kernel, dona das estruturas do SO
+        final String comando = line;
+        if (so.laco != null) {
+            so.laco.executaEsperando(() -> executaComando(comando));
+        } else {
+            executaComando(comando);
         }
     }
 
-    public class ThreadCPU implements Runnable {
-        @Override
-        public void run() {
-            while(true) {
-                try {
-                    so.semaCPU.acquire();
-                    while (so.gp.rodando != null) {
-                        hw.cpu.run_one_instruction();
-                    }
-                } catch (InterruptedException e) { e.printStackTrace(); }
+    // Espera até não haver processos (limiteMs > 0: no máximo esse tempo, virtual no modo -sim).
+    // Na simulação, volta também se o sistema ficar ocioso com processos que não terminam.
+    // Retorna true se todos terminaram.
+    private boolean esperaProcessos(long limiteMs) {
+        if (so.sim != null) {
+            if (limiteMs > 0) {
+                so.sim.executa(limiteMs * 1_000_000L);
+            } else {
+                so.sim.executa();
             }
+            return so.gp.tabela.size() == 0;
         }
-    }
-
-    public class ThreadConsole implements Runnable {
-        @Override
-        public void run() {
-            while(true) {
-                try {
-                    IORequest req = so.filaPedidosConsole.take();
-                    PCB pcb = req.pcb;
-                    int endFisico = hw.cpu.translate(req.endLogico);
-                    if (req.tipo == 1) {
-                        System.out.print("    > CONSOLE INPUT (para pid: " + pcb.id + ", end: " + req.endLogico + "): ");
-                        Scanner s = new Scanner(System.in);
-                        int valor = s.nextInt();
-                        hw.mem.pos[endFisico].p = valor;
-                        hw.mem.pos[endFisico].opc = Opcode.DATA;
-                    } else if (req.tipo == 2) {
-                        System.out.println("    > CONSOLE OUTPUT (de pid: " + pcb.id + ", end: " + req.endLogico + "): " + hw.mem.pos[endFisico].p);
-                    }
-                    hw.cpu.setIOInterrupt(pcb.id);
-                } catch (InterruptedException e) { e.printStackTrace(); }
+        long prazo = limiteMs > 0 ? System.nanoTime() + limiteMs * 1_000_000L : Long.MAX_VALUE;
+        while (so.gp.tabela.size() > 0) {
+            if (System.nanoTime() >= prazo) {
+                return false;
             }
+            LockSupport.parkNanos(1_000_000);
         }
+        return true;
     }
 
-    // ------------------- THREAD DISCO VM -------------------
-    public class ThreadDiscoVM implements Runnable {
-        @Override
-        public void run() {
-            while(true) {
-                try {
-                    IORequestVM req = so.filaPedidosDiscoVM.take();
+    // Interpreta e executa um comando da CLI
+    private void executaComando(String line) {
+        String[] args = line.split("\\s+");
+        String cmd = args[0].toLowerCase();
+        
+        try {
+            switch (cmd) {
+                case "new":
+                    if (args.length < 2) {
+                        throw new ArrayIndexOutOfBoundsException();
+                    }
+                    Program p = progs.retrieveProgram(args[1]);
+                    if (p == null) {
+                        System.out.println("Erro: Programa '" + args[1] + "' não encontrado.");
+                    } else {
+                        // new prog xN: N processos de uma vez
+                        int copias = 1;
+                        int prox = 2;
+                        if (args.length > prox && args[prox].matches("[xX]\\d+")) {
+                            copias = Integer.parseInt(args[prox].substring(1));
+                            prox++;
+                        }
+                        // new prog < v1 v2 ...: valores roteirizados para as leituras do processo
+                        int[] entrada = null;
+                        if (args.length > prox && args[prox].equals("<")) {
+                            entrada = new int[args.length - prox - 1];
+                            for (int i = prox + 1; i < args.length; i++) {
+                                entrada[i - prox - 1] = Integer.parseInt(args[i]);
+                            }
+                        }
+                        int[] falhas = new int[1];
+                        int[] roteiro = entrada;
+                        int n = copias;
+                        so.noKernel(() -> {
+                            for (int i = 0; i < n; i++) {
+                                if (!so.gp.criaProcesso(p, roteiro)) {
+                                    falhas[0]++;
+                                }
+                            }
+                        });
+                        if (copias == 1 && falhas[0] == 1) {
+                            System.out.println("Erro: Falha ao criar processo (sem memória).");
+                        } else if (falhas[0] > 0) {
+                            System.out.println("Erro: " + falhas[0] + " de " + copias + " processos não foram criados (sem memória).");
+                        } else if (copias > 1) {
+                            System.out.println(copias + " processos " + p.name + " criados.");
+                        }
+                    }
+                    break;
                     
-                    // Simula tempo de I/O do disco
-                    Thread.sleep(100);
+                case "rm":
+                    if (args.length < 2) {
+                        throw new ArrayIndexOutOfBoundsException();
+                    }
+                    int id = Integer.parseInt(args[1]);
+                    so.noKernel(() -> so.gp.desalocaProcesso(id));
+                    break;
                     
-                    if (req.tipoOperacao == 0) {
-                        // LOAD_PAGE: Carrega página do disco para memória
-                        System.out.println("DISCO VM: Carregando página " + req.pageNumber + " do processo " + req.pcb.id + " para frame " + req.frameNumber);
-                        
-                        // Carrega a página da imagem do programa (simulando disco)
-                        Word[] imagem = req.pcb.imagem;
-                        int endLogicoBase = req.pageNumber * hw.tamPg;
-                        for (int offset = 0; offset < hw.tamPg; offset++) {
-                            int endLogico = endLogicoBase + offset;
-                            int endFisico = (req.frameNumber * hw.tamPg) + offset;
-                            if (endLogico < imagem.length) {
-                                hw.mem.pos[endFisico] = new Word(imagem[endLogico].opc, imagem[endLogico].ra, imagem[endLogico].rb, imagem[endLogico].p);
-                            } else {
-                                hw.mem.pos[endFisico] = new Word(Opcode.___, -1, -1, 0);
+                case "ps":
+                    so.gp.ps();
+                    break;
+                    
+                case "dump":
+                    if (args.length < 2) {
+                        throw new ArrayIndexOutOfBoundsException();
+                    }
+                    int dumpId = Integer.parseInt(args[1]);
+                    so.gp.dump(dumpId);
+                    break;
+                    
+                case "dumpm":
+                    if (args.length < 3) {
+                        throw new ArrayIndexOutOfBoundsException();
+                    }
+                    int inicio = Integer.parseInt(args[1]);
+                    int fim = Integer.parseInt(args[2]);
+                    so.utils.dump(inicio, fim);
+                    break;
+                    
+                case "nice":
+                    if (args.length < 3) {
+                        throw new ArrayIndexOutOfBoundsException();
+                    }
+                    so.gp.nice(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+                    break;
+
+                case "share":
+                    so.gp.share();
+                    break;
+
+                case "shm":
+                    if (args.length >= 3 && args[1].equals("rm")) {
+                        int chave = Integer.parseInt(args[2]);
+                        so.noKernel(() -> so.gp.shmrm(chave)); // Pode liberar os frames do segmento
+                    } else {
+                        so.gp.shm();
+                    }
+                    break;
+
+                case "mbox":
+                    so.gp.mbox();
+                    break;
+
+                case "console":
+                    if (args.length == 1) {
+                        so.console.resumo();
+                    } else if (args[1].equals("in") && args.length >= 3) {
+                        if (args[2].equals("stdin")) {
+                            so.entrada.usaStdin();
+                            System.out.println("CONSOLE: Entrada pelo stdin.");
+                        } else {
+                            try {
+                                so.entrada.abreArquivo(args[2]);
+                                System.out.println("CONSOLE: Entrada pelo arquivo " + args[2] + ".");
+                            } catch (IOException e) {
+                                System.out.println("Erro: Não foi possível abrir '" + args[2] + "'.");
                             }
                         }
-                        so.ultimoIOVMConcluido = req;
-                        hw.cpu.setIOInterruptVM(req.pcb.id, 0);
-                    } else if (req.tipoOperacao == 1) {
-                        // SAVE_PAGE: Salva página da memória para disco
-                        System.out.println("DISCO VM: Salvando página " + req.pageNumber + " do processo " + req.pcb.id + " do frame " + req.frameNumber);
-                        // Em um sistema real, aqui salvaríamos a página no disco
-                        // Para simulação, apenas marcamos que foi salva
-                        so.ultimoIOVMConcluido = req;
-                        hw.cpu.setIOInterruptVM(req.pcb.id, 1);
+                    } else if (args[1].equals("script") && args.length >= 3) {
+                        PCB alvo = so.gp.tabela.busca(Integer.parseInt(args[2]));
+                        if (alvo == null) {
+                            System.out.println("Erro: Processo " + args[2] + " não encontrado.");
+                        } else {
+                            int[] roteiro = new int[args.length - 3];
+                            for (int i = 3; i < args.length; i++) {
+                                roteiro[i - 3] = Integer.parseInt(args[i]);
+                            }
+                            so.entrada.roteiriza(alvo, roteiro);
+                        }
+                    } else if (args[1].equals("captura") && args.length >= 3) {
+                        so.console.setCaptura(args[2].equals("on"));
+                    } else if (args[1].equals("saida")) {
+                        so.console.saida(args.length >= 3 ? Integer.parseInt(args[2]) : -1);
+                    } else {
+                        System.out.println("Uso: console [in arquivo|stdin] | [script id v1 v2 ...] | [captura on|off] | [saida [id]]");
                     }
-                } catch (InterruptedException e) { e.printStackTrace(); }
-            }
-        }
-    }
+                    break;
 
-    // ------------------- I N T E R R U P C O E S - rotinas de tratamento
-    // ----------------------------------
-    public class InterruptHandling {
-        private SO so;
+                case "sim":
+                    if (so.sim == null) {
+                        System.out.println("Simulação desligada (inicie com -sim).");
+                    } else if (args.length >= 3 && args[1].equals("run")) {
+                        so.sim.executa(Long.parseLong(args[2]) * 1_000_000L);
+                    } else if (args.length >= 2 && args[1].equals("run")) {
+                        so.sim.executa();
+                    } else if (args.length >= 3 && args[1].equals("limite")) {
+                        so.sim.setLimite(Long.parseLong(args[2]) * 1_000_000L);
+                    } else if (args.length >= 3 && args[1].equals("auto")) {
+                        so.sim.setAutomatico(args[2].equals("on"));
+                    } else {
+                        so.sim.info();
+                    }
+                    break;
 
-        public InterruptHandling(SO _so) {
-            so = _so;
-        }
+                case "kernel":
+                    so.infoKernel();
+                    break;
 
-        public void handle(Interrupts irpt) {
-            switch (irpt) {
-                case intFimDeFatiaDeTempo:
-                    PCB processoAtual = so.gp.rodando;
-                    processoAtual.pc = hw.cpu.getPc();
-                    processoAtual.estado = ProcessState.READY;
-                    so.gp.prontos.addLast(processoAtual);
-                    so.gp.rodando = null;
-                    so.semaEscalonador.release();
+                case "dev":
+                    so.infoDispositivos();
                     break;
-                    
-                case intIO:
-                    int pid = hw.cpu.getPendingIOProcessId();
-                    PCB pcb = so.gp.findAndRemoveFromBlocked(pid);
-                    if (pcb != null) {
-                        pcb.estado = ProcessState.READY;
-                        so.gp.prontos.addLast(pcb);
-                        System.out.println("    > INT IO: Processo " + pcb.id + " desbloqueado -> READY.");
+
+                case "timers":
+                    so.temporizadores.info();
+                    break;
+
+                case "huge":
+                    if (args.length < 3) {
+                        throw new ArrayIndexOutOfBoundsException();
+                    }
+                    so.gp.huge(Integer.parseInt(args[1]), args[2].equals("on"));
+                    break;
+
+                case "quantum":
+                    if (args.length == 1) {
+                        so.quantum.info();
+                    } else if (args[1].equals("auto")) {
+                        if (args.length < 3) {
+                            throw new ArrayIndexOutOfBoundsException();
+                        }
+                        so.quantum.setAdaptativo(args[2].equals("on"));
+                        so.quantum.info();
+                    } else if (args[1].equals("min")) {
+                        if (args.length < 3) {
+                            throw new ArrayIndexOutOfBoundsException();
+                        }
+                        so.quantum.setMinimo(Long.parseLong(args[2]));
+                        so.quantum.info();
+                    } else if (args[1].equals("instr") || args[1].equals("ns")) {
+                        if (args.length < 3) {
+                            throw new ArrayIndexOutOfBoundsException();
+                        }
+                        so.quantum.configura(args[1].equals("ns"), Long.parseLong(args[2]));
+                        so.quantum.info();
+                    } else {
+                        System.out.println("Uso: quantum [instr|ns [valor]] | [auto on|off] | [min valor]");
+                    }
+                    break;
+
+                case "stats":
+                    if (args.length == 1) {
+                        so.gp.stats();
+                    } else if (args[1].equals("arquivo")) {
+                        if (args.length < 3) {
+                            throw new ArrayIndexOutOfBoundsException();
+                        }
+                        so.gp.gravaStats(args[2]);
+                    } else {
+                        so.gp.stats(Integer.parseInt(args[1]));
+                    }
+                    break;
+
+                case "lat":
+                    if (args.length >= 2 && args[1].equals("zera")) {
+                        so.latencias.zera();
+                    } else {
+                        so.latencias.info();
                     }
                     break;
+
+                case "traceon":
+                    hw.cpu.setDebug(true);
+                    System.out.println("CPU trace ligado.");
+                    break;
                     
-                case intPageFault:
-                    handlePageFault();
+                case "traceoff":
+                    hw.cpu.setDebug(false);
+                    System.out.println("CPU trace desligado.");
                     break;
                     
-                case intFimCargaDiscoVM:
-                    handleFimCargaDiscoVM();
+                case "meminfo":
+                    System.out.println("=== INFORMAÇÕES DE MEMÓRIA ===");
+                    System.out.println("Frames livres: " + gerenteMem.getNumFramesLivres());
+                    System.out.println("Tamanho da memória: " + tamMemoria + " palavras");
+                    System.out.println("Tamanho da página: " + tamPagina);
+                    System.out.println("Espaço virtual por processo: "
+                            + (so.gp.getEspacoVirtual() > 0 ? so.gp.getEspacoVirtual() + " palavras" : "tamanho da imagem"));
+                    long traducoes = hw.cpu.getTraducoes();
+                    long traducoesHuge = hw.cpu.getTraducoesHuge();
+                    System.out.println("Huge pages (" + TabelaPaginas.PAGINAS_POR_HUGE + " páginas): "
+                            + gerenteMem.hugeAlocadas + " alocadas, " + gerenteMem.hugeFallbacks + " fallbacks, "
+                            + gerenteMem.hugeDivididas + " divididas");
+                    System.out.printf("Traduções via huge page: %d de %d (%.1f%%)%n", traducoesHuge, traducoes,
+                            traducoes == 0 ? 0.0 : 100.0 * traducoesHuge / traducoes);
                     break;
                     
-                case intFimSalvaDiscoVM:
-                    handleFimSalvaDiscoVM();
+                case "help":
+                    System.out.println("=== COMANDOS DISPONÍVEIS ===");
+                    System.out.println("new [prog]    - Cria novo processo com programa 'prog'");
+                    System.out.println("new [prog] < v1 v2 ... - Cria o processo com entrada roteirizada do console");
+                    System.out.println("new [prog] xN [< v1 ...] - Cria N processos do programa de uma vez");
+                    System.out.println("espera [ms]   - Espera até não haver processos ativos (no máximo 'ms')");
+                    System.out.println("rm [id]       - Remove processo com ID 'id'");
+                    System.out.println("ps            - Lista todos os processos");
+                    System.out.println("dump [id]     - Mostra detalhes do processo 'id'");
+                    System.out.println("dumpm [ini] [fim] - Dump da memória física de 'ini' a 'fim'");
+                    System.out.println("meminfo       - Mostra informações de memória");
+                    System.out.println("nice [id] [peso] - Define o peso do processo no escalonamento proporcional");
+                    System.out.println("share         - Mostra fatia de CPU real x alvo por processo");
+                    System.out.println("stats [id]    - Contadores de desempenho (sistema, ou do processo 'id')");
+                    System.out.println("stats arquivo [nome] - Grava os contadores de todos os processos em TSV");
+                    System.out.println("lat [zera]    - Percentis de faltas de página, E/S, fila de prontos e fila do disco");
+                    System.out.println("huge [id] on|off - Usa huge pages nas próximas faltas do processo");
+                    System.out.println("shm [rm chave] - Lista (ou remove) segmentos de memória compartilhada");
+                    System.out.println("mbox          - Estatísticas das caixas de mensagens");
+                    System.out.println("console       - Estado do console (entrada, escritas, captura)");
+                    System.out.println("console in arquivo|stdin - Lê as entradas dos processos de um arquivo");
+                    System.out.println("console script [id] v1 v2 ... - Entrada roteirizada para o processo");
+                    System.out.println("console captura on|off - Guarda a saída dos processos em vez de imprimir");
+                    System.out.println("console saida [id] - Mostra (e descarta) a saída capturada");
+                    System.out.println("(linha só com números) - Valores digitados para as leituras do console");
+                    System.out.println("sim [run [ms] | limite ms | auto on|off] - Estado da simulação (-sim) e execução");
+                    System.out.println("kernel        - Modo de execução do kernel e suas estatísticas");
+                    System.out.println("dev           - Estatísticas dos dispositivos, interrupções, DMA e pedidos");
+                    System.out.println("timers        - Estado da roda de temporização (sleep)");
+                    System.out.println("quantum [instr|ns] [valor] - Configura o quantum (sem args: mostra)");
+                    System.out.println("quantum auto on|off - Liga/desliga o quantum adaptativo");
+                    System.out.println("quantum min [valor] - Define a fatia mínima do modo adaptativo");
+                    System.out.println("traceon       - Liga trace da CPU");
+                    System.out.println("traceoff      - Desliga trace da CPU");
+                    System.out.println("exit          - Encerra o sistema");
+                    System.out.println("help          - Mostra esta ajuda");
                     break;
                     
-                case intEnderecoInvalido:
-                case intInstrucaoInvalida:
-                case intOverflow:
-                    System.out.println("!!!! INTERRUPÇÃO FATAL: " + irpt + " no Processo " + so.gp.rodando.id);
-                    PCB processoComErro = so.gp.rodando;
-                    so.gp.rodando = null;
-                    so.gp.desalocaProcesso(processoComErro.id);
-                    so.semaEscalonador.release();
+                case "exit":
+                    System.out.println("Encerrando sistema...");
+                    System.exit(0);
                     break;
                     
                 default:
-                    System.out.println("IH: Interrupção não tratada: " + irpt);
+                    System.out.println("Erro: Comando '" + cmd + "' não reconhecido. Digite 'help'.");
                     break;
             }
+        } catch (NumberFormatException e) {
+            System.out.println("Erro: Argumento inválido. Esperava um número.");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.out.println("Erro: Faltam argumentos para o comando '" + cmd + "'.");
+        } catch (Exception e) {
+            System.out.println("Erro inesperado: " + e.getMessage());
+            e.printStackTrace();
         }
+    }
 
-        private void handlePageFault() {
-            PCB processoAtual = so.gp.rodando;
-            int logicalAddress = hw.cpu.getPageFaultLogicalAddress();
-            int pageNumber = logicalAddress / hw.tamPg;
-            
-            System.out.println("    > PAGE FAULT: Processo " + processoAtual.id + " na página " + pageNumber + " (end. lógico: " + logicalAddress + ")");
+    // ------------------- BENCHMARKS -------------------
+    // Micro-benchmarks (java Sistema -bench [filtro]) do interpretador, da tradução de endereços,
+    // do gerente de memória e da cópia de página. Cada medida é calibrada, aquecida e então
+    // cronometrada em ITERACOES rodadas de TEMPO_RODADA_MS; o resultado é ns por operação
+    // (média e desvio entre as rodadas), uma linha separada por tabs, para comparar commits.
+    // A saída do kernel é descartada enquanto mede. Os benchmarks JMH (src/jmh/java) usam as
+    // mesmas medidas, já preparadas, por medidaBenchmark.
+    public class Benchmarks {
+        private static final int AQUECIMENTOS = 3;
+        private static final int ITERACOES = 5;
+        private static final long TEMPO_RODADA_MS = 200;
+        private static final long LIMITE_VIRTUAL_NS = 2_000_000_000L; // Por execução de programa
+        private static final int[] FRAMES = {64, 1024, 16384};     // Tamanhos do gerente de memória
+        private static final int PAGINAS_TRADUCAO = 1024;
+        private static final int[] ENTRADA = {5, 5, 5, 5, 5, 5, 5, 5}; // Roteiro de console dos programas
+        private static final int ESPACO_PASSO = 128; // Espaço virtual no laço da CPU (PB e PC usam até 99)
 
-            // Salva contexto e bloqueia processo
-            processoAtual.pc = hw.cpu.getPc();
-            processoAtual.estado = ProcessState.BLOCKED;
-            so.gp.bloqueados.add(processoAtual);
-            so.gp.rodando = null;
+        // Executa n operações e retorna quantas fez (o interpretador conta instruções)
+        public interface Operacao extends IntToLongFunction {
+            long executa(int n);
 
-            // Tenta alocar um frame livre
-            int frameLivre = so.gerenteMem.alocaFrame();
-            if (frameLivre != -1) {
-                // Cenário 1: Frame livre encontrado
-                System.out.println("    > PAGE FAULT: Frame livre " + frameLivre + " alocado");
-                processoAtual.tabelaPaginas[pageNumber].frameNumber = frameLivre;
-                // Marca o frame como ocupado por esta página
-                so.gerenteMem.ocupaFrame(frameLivre, processoAtual, pageNumber);
-                
-                // Solicita carga da página do disco
-                IORequestVM req = new IORequestVM(processoAtual, frameLivre, pageNumber, 
-                                                pageNumber * hw.tamPg, 0);
-                so.filaPedidosDiscoVM.add(req);
-                so.semaDiscoVM.release();
-            } else {
-                // Cenário 2: Sem frames livres - vitimização
-                System.out.println("    > PAGE FAULT: Memória cheia, iniciando vitimização");
-                int frameVitima = so.gerenteMem.escolheVitima();
-                
-                if (frameVitima != -1) {
-                    Pair<PCB, Integer> vitima = so.gerenteMem.findPageByFrame(frameVitima);
-                    if (vitima != null) {
-                        PCB pcbVitima = vitima.getKey();
-                        int pageVitima = vitima.getValue();
-                        PageTableEntry entryVitima = pcbVitima.tabelaPaginas[pageVitima];
-                        
-                        if (entryVitima.dirtyBit) {
-                            // Vítima dirty - precisa salvar no disco
-                            System.out.println("    > VITIMIZAÇÃO: Frame " + frameVitima + " (página " + pageVitima + " do processo " + pcbVitima.id + ") é dirty, salvando...");
-                            IORequestVM req = new IORequestVM(pcbVitima, frameVitima, pageVitima, 
-                                                            entryVitima.diskAddress, 1);
-                            so.filaPedidosDiscoVM.add(req);
-                            so.semaDiscoVM.release();
-                            
-                            // Armazena page fault pendente
-                            so.filaPageFaultPendentes.add(new PageFaultPendente(processoAtual, pageNumber, logicalAddress));
-                        } else {
-                            // Vítima clean - pode reusar imediatamente
-                            System.out.println("    > VITIMIZAÇÃO: Frame " + frameVitima + " (página " + pageVitima + " do processo " + pcbVitima.id + ") é clean, reutilizando...");
-                            entryVitima.validBit = false;
-                            processoAtual.tabelaPaginas[pageNumber].frameNumber = frameVitima;
-                            so.gerenteMem.ocupaFrame(frameVitima, processoAtual, pageNumber);
-                            
-                            // Solicita carga da página
-                            IORequestVM req = new IORequestVM(processoAtual, frameVitima, pageNumber, 
-                                                            pageNumber * hw.tamPg, 0);
-                            so.filaPedidosDiscoVM.add(req);
-                            so.semaDiscoVM.release();
+            @Override
+            default long applyAsLong(int n) {
+                return executa(n);
+            }
+        }
+
+        private final PrintStream saida;
+        private final String filtro; // Prefixo do nome dos benchmarks a rodar (null = todos)
+        private long sumidouro;      // Consome os resultados para o JIT não descartar o trabalho
+        private Map<String, Operacao> coleta; // Para o JMH: as medidas preparadas, por "nome\tparametro"
+
+        public Benchmarks(PrintStream _saida, String _filtro) {
+            this.saida = _saida;
+            this.filtro = _filtro;
+        }
+
+        public void executa() {
+            saida.println("# benchmark\tparametro\tns/op\tdesvio\toperacoes");
+            saida.println("# java " + System.getProperty("java.version") + ", mem " + tamMemoria + ", pag " + tamPagina
+                    + ", " + AQUECIMENTOS + " aquecimentos e " + ITERACOES + " rodadas de " + TEMPO_RODADA_MS + " ms");
+            todas();
+        }
+
+        // Prepara as medidas selecionadas sem cronometrar; quem mede é o JMH
+        public Map<String, Operacao> coleta() {
+            coleta = new HashMap<>();
+            todas();
+            return coleta;
+        }
+
+        private void todas() {
+            interpretador();
+            passo();
+            traducao();
+            gerenteMemoria();
+            cargaPagina();
+        }
+
+        private void comenta(String linha) {
+            if (coleta == null) {
+                saida.println("# " + linha);
+            }
+        }
+
+        private boolean selecionado(String nome) {
+            return filtro == null || nome.startsWith(filtro);
+        }
+
+        private void mede(String nome, String parametro, Operacao op) {
+            if (coleta != null) {
+                coleta.put(nome + "\t" + parametro, op);
+                return;
+            }
+            // Calibra o lote para levar ao menos um décimo da rodada por chamada
+            int n = 1;
+            while (n < (1 << 30)) {
+                long t0 = System.nanoTime();
+                op.executa(n);
+                if (System.nanoTime() - t0 >= TEMPO_RODADA_MS * 100_000L) {
+                    break;
+                }
+                n *= 2;
+            }
+            double[] nsPorOp = new double[ITERACOES];
+            long total = 0;
+            for (int r = -AQUECIMENTOS; r < ITERACOES; r++) {
+                long ops = 0;
+                long inicio = System.nanoTime();
+                long fim = inicio + TEMPO_RODADA_MS * 1_000_000L;
+                long agora;
+                do {
+                    ops += op.executa(n);
+                    agora = System.nanoTime();
+                } while (agora < fim);
+                if (r >= 0) {
+                    nsPorOp[r] = (double) (agora - inicio) / ops;
+                    total += ops;
+                }
+            }
+            double media = 0;
+            for (double v : nsPorOp) {
+                media += v / ITERACOES;
+            }
+            double variancia = 0;
+            for (double v : nsPorOp) {
+                variancia += (v - media) * (v - media) / ITERACOES;
+            }
+            saida.printf(Locale.ROOT, "%s\t%s\t%.3f\t%.3f\t%d%n", nome, parametro, media, Math.sqrt(variancia), total);
+        }
+
+        // Programa inteiro num sistema em modo -sim (uma thread, disco em tempo virtual): ns por
+        // instrução, incluindo criação, faltas de página e escalonamento. Programas que não
+        // terminam sozinhos (esperam mensagens ou rodam para sempre) ficam de fora.
+        private void interpretador() {
+            if (!selecionado("interpretador")) {
+                return;
+            }
+            for (Program p : progs.progs) {
+                Sistema s = new Sistema(tamMemoria, tamPagina);
+                s.so.ativaSimulacao();
+                s.so.sim.setLimite(LIMITE_VIRTUAL_NS);
+                s.hw.cpu.setDebug(false);
+                Program prog = s.progs.retrieveProgram(p.name);
+                if (!rodaPrograma(s, prog)) {
+                    comenta("interpretador\t" + p.name + "\tnão termina sozinho");
+                    continue;
+                }
+                mede("interpretador", p.name, n -> {
+                    long antes = s.so.sim.instrucoes;
+                    for (int i = 0; i < n; i++) {
+                        rodaPrograma(s, prog);
+                    }
+                    return s.so.sim.instrucoes - antes;
+                });
+            }
+        }
+
+        // Roda o programa até o sistema ficar ocioso; false (e remove o que sobrou) se não terminou
+        private boolean rodaPrograma(Sistema s, Program prog) {
+            s.so.gp.criaProcesso(prog, ENTRADA);
+            s.so.sim.executa();
+            s.so.gp.caixas.clear(); // Cada execução começa com as caixas de mensagens vazias
+            if (s.so.gp.tabela.size() == 0) {
+                return true;
+            }
+            for (PCB pcb : s.so.gp.tabela) {
+                s.so.gp.desalocaProcesso(pcb.id);
+            }
+            return false;
+        }
+
+        // Só o laço da CPU: run_one_instruction direto, com todas as páginas do programa na
+        // memória, fatia sem fim e trace desligado. Antes de um SYSCALL, STOP ou dado, que
+        // entrariam no kernel (e montariam as suas mensagens), o programa recomeça do pc 0.
+        // Se o kernel ainda assim o tirar da CPU (overflow, endereço inválido), é recriado.
+        private void passo() {
+            if (!selecionado("passo")) {
+                return;
+            }
+            for (Program p : progs.progs) {
+                Sistema s = new Sistema(tamMemoria, tamPagina, ESPACO_PASSO);
+                s.hw.cpu.setDebug(false);
+                Program prog = s.progs.retrieveProgram(p.name);
+                boolean[] recomeca = new boolean[prog.image.length]; // pc -> instrução que entraria no kernel
+                for (int i = 0; i < recomeca.length; i++) {
+                    Opcode o = prog.image[i].opc;
+                    recomeca[i] = o == Opcode.SYSCALL || o == Opcode.STOP || o == Opcode.DATA || o == Opcode.___;
+                }
+                if (recomeca[0]) {
+                    comenta("passo\t" + p.name + "\tcomeça chamando o kernel");
+                    continue;
+                }
+                PCB[] atual = { poeNaCPU(s, prog) };
+                CPU cpu = s.hw.cpu;
+                mede("passo", p.name, n -> {
+                    for (int i = 0; i < n; i++) {
+                        int pc = cpu.getPc();
+                        if (pc < 0 || pc >= recomeca.length || recomeca[pc]) {
+                            Arrays.fill(cpu.getReg(), 0);
+                            cpu.setContext(0, atual[0].tabelaPaginas);
+                        }
+                        cpu.run_one_instruction();
+                        if (s.so.gp.rodando != atual[0]) {
+                            atual[0] = poeNaCPU(s, prog);
                         }
                     }
+                    return n;
+                });
+            }
+        }
+
+        // Cria o processo com todas as páginas do espaço já na memória e o põe na CPU como o
+        // despacho faria, com uma fatia que não acaba
+        private PCB poeNaCPU(Sistema s, Program prog) {
+            s.so.gp.criaProcesso(prog, ENTRADA);
+            PCB pcb = s.so.gp.prontos.pollFirst();
+            TabelaPaginas t = pcb.tabelaPaginas;
+            for (int pg = 0; pg < t.tamanho(); pg++) {
+                if (!TabelaPaginas.valida(t.get(pg))) {
+                    int frame = s.so.gerenteMem.alocaFrame();
+                    t.mapeia(pg, frame);
+                    s.so.gerenteMem.ocupaFrame(frame, pcb, pg);
+                    s.so.gp.carregarPagina(prog.image, pcb, pg);
                 }
             }
-            
-            so.semaEscalonador.release();
+            pcb.estado = ProcessState.RUNNING;
+            s.so.gp.rodando = pcb;
+            Arrays.fill(s.hw.cpu.getReg(), 0);
+            s.hw.cpu.setContext(0, t);
+            s.hw.cpu.renovaFatia(Long.MAX_VALUE, false);
+            return pcb;
         }
 
-        private void handleFimCargaDiscoVM() {
-            IORequestVM req = so.ultimoIOVMConcluido;
-            if (req != null) {
-                // Atualiza tabela de páginas
-                PageTableEntry entry = req.pcb.tabelaPaginas[req.pageNumber];
-                entry.validBit = true;
-                entry.dirtyBit = false;
-                
-                // Move processo para ready
-                so.gp.bloqueados.remove(req.pcb);
-                req.pcb.estado = ProcessState.READY;
-                so.gp.prontos.add(req.pcb);
-                
-                System.out.println("    > FIM CARGA DISCO: Página " + req.pageNumber + " do processo " + req.pcb.id + " carregada no frame " + req.frameNumber);
+        // MMU: endereços aleatórios num espaço de PAGINAS_TRADUCAO páginas já mapeadas, com
+        // páginas comuns e com huge pages
+        private void traducao() {
+            if (!selecionado("translate")) {
+                return;
+            }
+            int[] enderecos = new int[4096];
+            Random r = new Random(42);
+            for (int i = 0; i < enderecos.length; i++) {
+                enderecos[i] = r.nextInt(PAGINAS_TRADUCAO * tamPagina);
+            }
+            for (boolean huge : new boolean[] {false, true}) {
+                TabelaPaginas t = new TabelaPaginas(PAGINAS_TRADUCAO);
+                for (int pg = 0; pg < PAGINAS_TRADUCAO; pg += huge ? TabelaPaginas.PAGINAS_POR_HUGE : 1) {
+                    if (huge) {
+                        t.mapeiaHuge(pg, pg);
+                    } else {
+                        t.mapeia(pg, pg);
+                    }
+                }
+                mede("translate", huge ? "huge" : "comum", n -> {
+                    hw.cpu.setTabelaPaginas(t); // Por lote: no JMH as duas medidas se alternam
+                    long soma = 0;
+                    for (int i = 0; i < n; i++) {
+                        soma += hw.cpu.translate(enderecos[i & (enderecos.length - 1)]);
+                    }
+                    sumidouro += soma;
+                    return n;
+                });
+            }
+            hw.cpu.setTabelaPaginas(null);
+        }
+
+        // Gerente de memória cheio, em vários tamanhos: alocar e liberar o único frame livre
+        // (o último da varredura), e escolher uma vítima e devolvê-la ao fim da FIFO. Cada
+        // medida tem o seu gerente, pois o JMH as roda depois de preparadas.
+        private void gerenteMemoria() {
+            for (int frames : FRAMES) {
+                if (selecionado("alocaFrame+liberaFrame")) {
+                    GerenteMemoria gm = gerenteCheio(frames);
+                    gm.liberaFrame(frames - 1);
+                    mede("alocaFrame+liberaFrame", "" + frames, n -> {
+                        for (int i = 0; i < n; i++) {
+                            int f = gm.alocaFrame();
+                            gm.liberaFrame(f);
+                            sumidouro += f;
+                        }
+                        return n;
+                    });
+                }
+                if (selecionado("escolheVitima")) {
+                    GerenteMemoria gm = gerenteCheio(frames);
+                    mede("escolheVitima", "" + frames, n -> {
+                        for (int i = 0; i < n; i++) {
+                            int f = gm.escolheVitima();
+                            gm.ocupaFrame(f, gm.donoDoFrame(f), f);
+                            sumidouro += f;
+                        }
+                        return n;
+                    });
+                }
+            }
+        }
+
+        // Todos os frames ocupados por um processo, com as páginas sem o bit R
+        private GerenteMemoria gerenteCheio(int frames) {
+            GerenteMemoria gm = new GerenteMemoria(frames * tamPagina, tamPagina);
+            PCB dono = new PCB(0, frames, null);
+            for (int f = 0; f < frames; f++) {
+                gm.ocupaFrame(f, dono, f);
+                dono.tabelaPaginas.mapeia(f, f);
+            }
+            return gm;
+        }
+
+        // Carga de uma página do disco ou do swap para a memória física (cópia por DMA)
+        private void cargaPagina() {
+            if (!selecionado("cargaPagina")) {
+                return;
+            }
+            Word[] origem = new Word[tamPagina];
+            for (int i = 0; i < tamPagina; i++) {
+                origem[i] = new Word(Opcode.DATA, -1, -1, i);
+            }
+            int frames = tamMemoria / tamPagina;
+            mede("cargaPagina", "" + tamPagina, n -> {
+                for (int i = 0; i < n; i++) {
+                    hw.dma.paraMemoria(origem, 0, (i % frames) * tamPagina, tamPagina);
+                }
+                return n;
+            });
+        }
+    }
+
+    // ------------------- GERADOR DE CARGA -------------------
+    // Macro-benchmark (java Sistema -carga arquivo): cada cenário do arquivo sobe um sistema
+    // novo, cria processos de uma mistura ponderada de programas com chegadas de Poisson e
+    // espera todos terminarem. Imprime uma linha por cenário, separada por tabs: vazão
+    // (instruções e processos por segundo), faltas de página por processo e os percentis
+    // 50 e 99 do tempo de retorno (criação ao fim) e da espera na fila de prontos, sobre os
+    // processos que terminaram (por STOP ou por erro). No modo sim os tempos são virtuais;
+    // nos demais, de relógio.
+    public static class Cenario {
+        public String nome = "padrao";
+        public String kernel = "threads"; // threads | laco | vthreads | sim
+        public int mem = 1024;
+        public int pag = 16;
+        public int vm = 0;
+        public long quantum = 0;           // Fatia fixa em instruções (0 = política adaptativa)
+        public int processos = 100;
+        public double taxa = 0;            // Chegadas por segundo (0 = todos de uma vez)
+        public long semente = 42;
+        public int limite = 60;            // Segundos até desistir dos que não terminaram
+        public List<String> programas = new ArrayList<>();
+        public List<Integer> pesos = new ArrayList<>();
+        public List<int[]> entradas = new ArrayList<>(); // Roteiro de console (null = nenhum)
+
+        public Cenario copia(String _nome) {
+            Cenario c = new Cenario();
+            c.nome = _nome;
+            c.kernel = kernel;
+            c.mem = mem;
+            c.pag = pag;
+            c.vm = vm;
+            c.quantum = quantum;
+            c.processos = processos;
+            c.taxa = taxa;
+            c.semente = semente;
+            c.limite = limite;
+            c.programas.addAll(programas);
+            c.pesos.addAll(pesos);
+            c.entradas.addAll(entradas);
+            return c;
+        }
+
+        // Uma linha "chave valor" por parâmetro e '#' para comentários. Parâmetros antes do
+        // primeiro 'cenario' valem para todos; cada 'programa nome peso [< v1 v2 ...]' soma um
+        // programa à mistura (os herdados incluídos).
+        public static List<Cenario> le(String arquivo) throws IOException {
+            List<Cenario> cenarios = new ArrayList<>();
+            Cenario padrao = new Cenario();
+            Cenario atual = padrao;
+            try (BufferedReader in = new BufferedReader(new FileReader(arquivo))) {
+                String linha;
+                for (int n = 1; (linha = in.readLine()) != null; n++) {
+                    int comentario = linha.indexOf('#');
+                    String[] t = (comentario >= 0 ? linha.substring(0, comentario) : linha).trim().split("\\s+");
+                    if (t[0].isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        switch (t[0]) {
+                            case "cenario":
+                                atual = padrao.copia(t[1]);
+                                cenarios.add(atual);
+                                break;
+                            case "kernel":
+                                if (!Arrays.asList("threads", "laco", "vthreads", "sim").contains(t[1])) {
+                                    throw new IllegalArgumentException("kernel desconhecido: " + t[1]);
+                                }
+                                atual.kernel = t[1];
+                                break;
+                            case "mem": atual.mem = Integer.parseInt(t[1]); break;
+                            case "pag": atual.pag = Integer.parseInt(t[1]); break;
+                            case "vm": atual.vm = Integer.parseInt(t[1]); break;
+                            case "quantum": atual.quantum = Long.parseLong(t[1]); break;
+                            case "processos": atual.processos = Integer.parseInt(t[1]); break;
+                            case "taxa": atual.taxa = Double.parseDouble(t[1]); break;
+                            case "semente": atual.semente = Long.parseLong(t[1]); break;
+                            case "limite": atual.limite = Integer.parseInt(t[1]); break;
+                            case "programa":
+                                int[] entrada = null;
+                                if (t.length > 3) {
+                                    if (!t[3].equals("<")) {
+                                        throw new IllegalArgumentException("esperado '<' antes da entrada");
+                                    }
+                                    entrada = new int[t.length - 4];
+                                    for (int i = 0; i < entrada.length; i++) {
+                                        entrada[i] = Integer.parseInt(t[i + 4]);
+                                    }
+                                }
+                                atual.programas.add(t[1]);
+                                atual.pesos.add(Integer.parseInt(t[2]));
+                                atual.entradas.add(entrada);
+                                break;
+                            default:
+                                throw new IllegalArgumentException("parâmetro desconhecido: " + t[0]);
+                        }
+                    } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                        throw new IllegalArgumentException(arquivo + ":" + n + ": linha inválida: " + linha.trim());
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException(arquivo + ":" + n + ": " + e.getMessage());
+                    }
+                }
+            }
+            if (cenarios.isEmpty()) {
+                cenarios.add(padrao);
+            }
+            for (Cenario c : cenarios) {
+                if (c.programas.isEmpty()) {
+                    throw new IllegalArgumentException("cenário " + c.nome + " sem programas");
+                }
+                if (c.mem <= 0 || c.pag <= 0 || c.mem % c.pag != 0) {
+                    throw new IllegalArgumentException("cenário " + c.nome + ": memória deve ser múltipla da página");
+                }
             }
+            return cenarios;
         }
 
-        private void handleFimSalvaDiscoVM() {
-            IORequestVM req = so.ultimoIOVMConcluido;
-            if (req != null) {
-                // Libera frame da vítima
-                so.gerenteMem.liberaFrame(req.frameNumber);
-                req.pcb.tabelaPaginas[req.pageNumber].validBit = false;
-                
-                System.out.println("    > FIM SALVA DISCO: Página " + req.pageNumber + " do processo " + req.pcb.id + " salva, frame " + req.frameNumber + " liberado");
-                
-                // Processa page fault pendente
-                PageFaultPendente pendente = so.filaPageFaultPendentes.poll();
-                if (pendente != null) {
-                    System.out.println("    > Processando page fault pendente do processo " + pendente.pcb.id + " página " + pendente.pageNumber);
-                    
-                    // Aloca frame para o page fault pendente
-                    pendente.pcb.tabelaPaginas[pendente.pageNumber].frameNumber = req.frameNumber;
-                    so.gerenteMem.ocupaFrame(req.frameNumber, pendente.pcb, pendente.pageNumber);
-                    
-                    // Solicita carga da página
-                    IORequestVM newReq = new IORequestVM(pendente.pcb, req.frameNumber, pendente.pageNumber, 
-                                                       pendente.pageNumber * hw.tamPg, 0);
-                    so.filaPedidosDiscoVM.add(newReq);
-                    so.semaDiscoVM.release();
+        public static final String CABECALHO = "cenario\tkernel\tprocessos\tconcluidos\terros\trejeitados\tincompletos"
+                + "\tduracao_s\treal_s\tinstrucoes_por_s\tprocessos_por_s\tfaltas_por_processo"
+                + "\tretorno_p50_ms\tretorno_p99_ms\tespera_p50_us\tespera_p99_us";
+
+        public static void executa(String arquivo, PrintStream saida) throws IOException {
+            List<Cenario> cenarios = le(arquivo);
+            saida.println(CABECALHO);
+            for (Cenario c : cenarios) {
+                Sistema s = new Sistema(c.mem, c.pag, c.vm);
+                switch (c.kernel) {
+                    case "sim": s.so.ativaSimulacao(); break;
+                    case "laco": s.so.ativaLaco(); break;
+                    case "vthreads": s.so.ativaThreadsPorProcesso(); break;
+                    default: break;
                 }
+                s.hw.cpu.setDebug(false);
+                if (c.quantum > 0) {
+                    s.so.quantum.setAdaptativo(false);
+                    s.so.quantum.configura(false, c.quantum);
+                }
+                Carga carga = s.new Carga(c);
+                s.so.carga = carga;
+                s.iniciaThreads();
+                saida.println(carga.roda());
+                saida.flush();
             }
         }
     }
 
-    // ------------------- C H A M A D A S D E S I S T E M A - rotinas de tratamento
-    // ----------------------
-    public class SysCallHandling {
-        private HW hw;
-        private SO so;
+    // Execução de um cenário num sistema: chegadas, espera e medidas dos processos terminados
+    public class Carga {
+        private final Cenario cenario;
+        private final Program[] programas;
+        private final Random aleatorio;
+        private int pesoTotal;
 
-        public SysCallHandling(HW _hw, SO _so) {
-            hw = _hw;
-            so = _so;
-        }
+        // Medidas dos processos terminados (pelo kernel, lidas pela thread do gerador)
+        private final long[] retornos;
+        private final long[] esperas;
+        private int concluidos;
+        private int erros;
+        private long instrucoes;
+        private long faltas;
+        private long ultimoFim;
+        private int rejeitados;
 
-        public void stop() {
-            System.out.println("    > SYSCALL STOP: Processo " + so.gp.rodando.id + " terminado.");
-            PCB processoTerminado = so.gp.rodando;
-            so.gp.rodando = null;
-            so.gp.desalocaProcesso(processoTerminado.id);
-            so.semaEscalonador.release();
+        public Carga(Cenario _cenario) {
+            this.cenario = _cenario;
+            this.programas = new Program[cenario.programas.size()];
+            for (int i = 0; i < programas.length; i++) {
+                programas[i] = progs.retrieveProgram(cenario.programas.get(i));
+                if (programas[i] == null) {
+                    throw new IllegalArgumentException("programa desconhecido: " + cenario.programas.get(i));
+                }
+                pesoTotal += cenario.pesos.get(i);
+            }
+            this.aleatorio = new Random(cenario.semente);
+            this.retornos = new long[cenario.processos];
+            this.esperas = new long[cenario.processos];
         }
 
-        public void handle() {
-            PCB processoAtual = so.gp.rodando;
-            processoAtual.pc = hw.cpu.getPc();
-            int tipoChamada = hw.cpu.reg[8];
-            if (tipoChamada == 1 || tipoChamada == 2) {
-                System.out.println("    > TRAP: Processo " + processoAtual.id + " solicitou E/S.");
-                processoAtual.estado = ProcessState.BLOCKED;
-                so.gp.bloqueados.add(processoAtual);
-                so.gp.rodando = null;
-                int endLogico = hw.cpu.reg[9];
-                so.filaPedidosConsole.add(new IORequest(processoAtual, endLogico, tipoChamada));
-                so.semaConsole.release();
-                so.semaEscalonador.release();
+        // Chamado pelo kernel no fim de um processo: STOP ou interrupção fatal (erro)
+        public synchronized void terminou(PCB pcb, boolean erro) {
+            long agora = so.agora();
+            int n = concluidos + erros;
+            if (n < retornos.length) {
+                retornos[n] = agora - pcb.criadoEm;
+                esperas[n] = so.gp.tabela.contador(pcb, Contadores.PRONTO_NS);
+            }
+            if (erro) {
+                erros++;
             } else {
-                System.out.println("    > TRAP: Chamada de sistema inválida: " + tipoChamada);
-                so.ih.handle(Interrupts.intInstrucaoInvalida);
-            }       
+                concluidos++;
+            }
+            instrucoes += pcb.instrucoesExecutadas;
+            faltas += so.gp.tabela.contador(pcb, Contadores.FALTAS_MAIORES)
+                    + so.gp.tabela.contador(pcb, Contadores.FALTAS_MENORES);
+            ultimoFim = agora;
         }
-    }
 
-    // ------------------ U T I L I T A R I O S D O S I S T E M A
-    // -----------------------------------------
-    public class Utilities {
-        private HW hw;
-        private GerenteMemoria gm;
+        // Escolhe o programa pela mistura ponderada e cria o processo
+        private void chega() {
+            int sorteio = aleatorio.nextInt(pesoTotal);
+            int i = 0;
+            while (sorteio >= cenario.pesos.get(i)) {
+                sorteio -= cenario.pesos.get(i);
+                i++;
+            }
+            Program p = programas[i];
+            int[] entrada = cenario.entradas.get(i);
+            so.noKernel(() -> cria(p, entrada));
+        }
 
-        public Utilities(HW _hw, GerenteMemoria _gm) {
-            hw = _hw;
-            gm = _gm;
+        private void cria(Program p, int[] entrada) {
+            if (!so.gp.criaProcesso(p, entrada)) {
+                synchronized (this) {
+                    rejeitados++;
+                }
+            }
         }
 
-        public void dump(Word w) {
-            System.out.print("[ ");
-            System.out.print(w.opc);
-            System.out.print(", ");
-            System.out.print(w.ra);
-            System.out.print(", ");
-            System.out.print(w.rb);
-            System.out.print(", ");
-            System.out.print(w.p);
-            System.out.println("  ] ");
+        // Próximo intervalo entre chegadas (exponencial: chegadas de Poisson), em ns
+        private long intervalo() {
+            if (cenario.taxa <= 0) {
+                return 0;
+            }
+            return (long) (-Math.log(1 - aleatorio.nextDouble()) / cenario.taxa * 1e9);
         }
 
-        public void dump(int ini, int fim) {
-            Word[] m = hw.mem.pos;
-            for (int i = ini; i < fim; i++) {
-                System.out.print(i);
-                System.out.print(":  ");
-                dump(m[i]);
+        public String roda() {
+            long inicioReal = System.nanoTime();
+            long inicio = so.agora();
+            if (so.sim != null) {
+                // Chegadas viram eventos no relógio virtual; a simulação roda até ficar ociosa
+                long quando = inicio;
+                for (int i = 0; i < cenario.processos; i++) {
+                    so.sim.agenda(quando, this::chega);
+                    quando += intervalo();
+                }
+                so.sim.setLimite(cenario.limite * 1_000_000_000L);
+                so.sim.executa();
+            } else {
+                long quando = inicio;
+                for (int i = 0; i < cenario.processos; i++) {
+                    long falta = quando - System.nanoTime();
+                    if (falta > 0) {
+                        LockSupport.parkNanos(falta);
+                    }
+                    chega();
+                    quando += intervalo();
+                }
+                long prazo = System.nanoTime() + cenario.limite * 1_000_000_000L;
+                while (so.gp.tabela.size() > 0 && System.nanoTime() < prazo) {
+                    LockSupport.parkNanos(1_000_000);
+                }
+            }
+            long realNs = System.nanoTime() - inicioReal;
+            int incompletos = so.gp.tabela.size();
+            for (PCB pcb : so.gp.tabela) {
+                so.noKernel(() -> so.gp.desalocaProcesso(pcb.id));
             }
+            return linha(inicio, realNs, incompletos);
         }
-    }
 
-    public class SO {
-        public InterruptHandling ih;
-        public SysCallHandling sc;
-        public Utilities utils;
-        public GerenteProcessos gp;
-        public HW hw;
-        public GerenteMemoria gerenteMem;
+        private synchronized String linha(long inicio, long realNs, int incompletos) {
+            int terminados = concluidos + erros;
+            int n = Math.min(terminados, retornos.length);
+            long[] r = Arrays.copyOf(retornos, n);
+            long[] e = Arrays.copyOf(esperas, n);
+            Arrays.sort(r);
+            Arrays.sort(e);
+            double duracao = Math.max(ultimoFim - inicio, 1) / 1e9;
+            return String.format(Locale.ROOT, "%s\t%s\t%d\t%d\t%d\t%d\t%d\t%.3f\t%.3f\t%.0f\t%.1f\t%.2f\t%.3f\t%.3f\t%.3f\t%.3f",
+                    cenario.nome, cenario.kernel, cenario.processos, concluidos, erros, rejeitados, incompletos,
+                    duracao, realNs / 1e9, instrucoes / duracao, terminados / duracao,
+                    terminados == 0 ? 0.0 : (double) faltas / terminados,
+                    percentil(r, 0.50) / 1e6, percentil(r, 0.99) / 1e6, percentil(e, 0.50) / 1e3, percentil(e, 0.99) / 1e3);
+        }
 
-        // Estruturas de sincronização
-        public Semaphore semaCPU = new Semaphore(0);
-        public Semaphore semaEscalonador = new Semaphore(0);
-        public Semaphore semaConsole = new Semaphore(0);
-        public Semaphore semaDiscoVM = new Semaphore(0);
-        
-        // Filas
-        public LinkedBlockingQueue<IORequest> filaPedidosConsole = new LinkedBlockingQueue<>();
-        public LinkedBlockingQueue<IORequestVM> filaPedidosDiscoVM = new LinkedBlockingQueue<>();
-        public Queue<PageFaultPendente> filaPageFaultPendentes = new LinkedList<>();
-        
-        // Threads
-        public ThreadEscalonador escalonador;
-        public ThreadCPU cpuThread;
-        public ThreadConsole console;
-        public ThreadDiscoVM discoVM;
-        
-        // Para comunicação com handlers de disco VM
-        public IORequestVM ultimoIOVMConcluido;
-        public SO(HW hw, GerenteMemoria gm, int tamPg) {
-            this.hw = hw;
-            this.gerenteMem = gm;
-            utils = new Utilities(hw, gm);
-            gp = new GerenteProcessos(hw, gm, tamPg, utils, this);
-            ih = new InterruptHandling(this);
-            sc = new SysCallHandling(hw, this);
-            hw.cpu.setAddressOfHandlers(ih, sc);
-            
-            escalonador = new ThreadEscalonador();
-            cpuThread = new ThreadCPU();
-            console = new ThreadConsole();
-            discoVM = new ThreadDiscoVM();
+        // Percentil pelo posto mais próximo (0 se não houver amostras)
+        private long percentil(long[] ordenados, double p) {
+            if (ordenados.length == 0) {
+                return 0;
+            }
+            return ordenados[Math.max(0, (int) Math.ceil(p * ordenados.length) - 1)];
         }
     }
 
-    // ------------------- S I S T E M A
-    // --------------------------------------------------------------------
-
-    public HW hw;
-    public SO so;
-    public Programs progs;
-    public GerenteMemoria gerenteMem;
-    private int tamPagina;
+    // ------------------- instancia e testa sistema
+    // Uso: java Sistema [-mem palavras] [-pag palavras] [-vm palavras] [-in arquivo] [-dev nome=threads] [-sim] [-kernel threads|laco|vthreads]
+    private static final String USO = "Uso: java Sistema [-mem palavras] [-pag palavras] [-vm palavras] [-in arquivo]"
+            + " [-dev nome=threads] [-sim] [-kernel threads|laco|vthreads] [-quantum instr|ns valor]"
+            + " [-quantum-auto on|off] [-quantum-min valor] [-script arquivo] [-c \"cmd; cmd\"]"
+            + " [-bench [filtro]] [-carga arquivo] [-metricas porta]";
 
-    public Sistema(int tamMem, int _tamPagina) {
-        this.tamPagina = _tamPagina;
-        hw = new HW(tamMem, _tamPagina);
-        gerenteMem = new GerenteMemoria(tamMem, _tamPagina);
-        so = new SO(hw, gerenteMem, _tamPagina);
-        hw.cpu.setUtilities(so.utils);
-        progs = new Programs();
+    // Ponto de entrada dos benchmarks JMH (src/jmh/java). Eles ficam num pacote, e o JMH não
+    // aceita o pacote padrão, então chegam aqui por reflexão: devolve a medida nome/parametro
+    // do harness -bench, já preparada, como função n -> operações feitas (null se não houver).
+    public static IntToLongFunction medidaBenchmark(int tamMem, int tamPg, String nome, String parametro) {
+        Sistema s = new Sistema(tamMem, tamPg);
+        return s.new Benchmarks(null, nome).coleta().get(nome + "\t" + parametro);
     }
 
-    // CLI interativa
-    public void runCLI() {
-        System.out.println("Sistema Operacional com Memória Virtual iniciado.");
-        System.out.println("Digite 'help' para comandos.");
-        Scanner scanner = new Scanner(System.in);
-        
-        while (true) {
-            System.out.print("> ");
-            String line = scanner.nextLine().trim();
-            
-            if (line.isEmpty()) {
-                continue;
-            }
-            
-            String[] args = line.split("\\s+");
-            String cmd = args[0].toLowerCase();
-            
-            try {
-                switch (cmd) {
-                    case "new":
-                        if (args.length < 2) {
-                            throw new ArrayIndexOutOfBoundsException();
-                        }
-                        Program p = progs.retrieveProgram(args[1]);
-                        if (p == null) {
-                            System.out.println("Erro: Programa '" + args[1] + "' não encontrado.");
-                        } else {
-                            boolean sucesso = so.gp.criaProcesso(p);
-                            if (!sucesso) {
-                                System.out.println("Erro: Falha ao criar processo (sem memória).");
-                            }
+    public static void main(String args[]) {
+        int tamMem = 1024;        // 1024 palavras
+        int tamPg = 16;           // página de 16 palavras
+        int tamEspacoVirtual = 0; // espaço virtual por processo (0 = tamanho da imagem)
+        String arquivoEntrada = null; // entradas do console (null = stdin)
+        List<String> threadsDispositivos = new ArrayList<>(); // "nome=n" por -dev
+        boolean simulacao = false;    // eventos discretos num relógio virtual
+        String modoKernel = "threads"; // threads | laco | vthreads
+        boolean benchmarks = false;   // -bench: roda os micro-benchmarks e sai
+        String filtroBenchmarks = null;
+        String arquivoCarga = null;   // -carga: roda os cenários do arquivo e sai
+        List<String> lote = null;     // -script/-c: comandos do modo lote (null = CLI interativa)
+        String quantumModo = null;    // -quantum instr|ns valor
+        long quantumValor = 0;
+        String quantumAuto = null;    // -quantum-auto on|off
+        long quantumMinimo = 0;       // -quantum-min valor
+        int portaMetricas = -1;       // -metricas: porta do /metrics em localhost (-1 = desligado)
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-mem": tamMem = Integer.parseInt(args[++i]); break;
+                    case "-pag": tamPg = Integer.parseInt(args[++i]); break;
+                    case "-vm":  tamEspacoVirtual = Integer.parseInt(args[++i]); break;
+                    case "-in":  arquivoEntrada = args[++i]; break;
+                    case "-dev": threadsDispositivos.add(args[++i]); break;
+                    case "-sim": simulacao = true; break;
+                    case "-kernel": modoKernel = args[++i]; break;
+                    case "-carga": arquivoCarga = args[++i]; break;
+                    case "-quantum":
+                        quantumModo = args[++i];
+                        quantumValor = Long.parseLong(args[++i]);
+                        if (!quantumModo.equals("instr") && !quantumModo.equals("ns")) {
+                            throw new NumberFormatException();
                         }
                         break;
-                        
-                    case "rm":
-                        if (args.length < 2) {
-                            throw new ArrayIndexOutOfBoundsException();
+                    case "-quantum-auto": quantumAuto = args[++i]; break;
+                    case "-quantum-min": quantumMinimo = Long.parseLong(args[++i]); break;
+                    case "-metricas": portaMetricas = Integer.parseInt(args[++i]); break;
+                    case "-script":
+                        String arquivoScript = args[++i];
+                        lote = lote == null ? new ArrayList<>() : lote;
+                        try (BufferedReader in = new BufferedReader(new FileReader(arquivoScript))) {
+                            String linha;
+                            while ((linha = in.readLine()) != null) {
+                                lote.add(linha);
+                            }
+                        } catch (IOException e) {
+                            System.out.println("Erro: Não foi possível ler o script '" + arquivoScript + "'.");
+                            return;
                         }
-                        int id = Integer.parseInt(args[1]);
-                        so.gp.desalocaProcesso(id);
-                        break;
-                        
-                    case "ps":
-                        so.gp.ps();
                         break;
-                        
-                    case "dump":
-                        if (args.length < 2) {
-                            throw new ArrayIndexOutOfBoundsException();
-                        }
-                        int dumpId = Integer.parseInt(args[1]);
-                        so.gp.dump(dumpId);
+                    case "-c":
+                        lote = lote == null ? new ArrayList<>() : lote;
+                        lote.addAll(Arrays.asList(args[++i].split(";")));
                         break;
-                        
-                    case "dumpm":
-                        if (args.length < 3) {
-                            throw new ArrayIndexOutOfBoundsException();
+                    case "-bench":
+                        benchmarks = true;
+                        if (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+                            filtroBenchmarks = args[++i];
                         }
-                        int inicio = Integer.parseInt(args[1]);
-                        int fim = Integer.parseInt(args[2]);
-                        so.utils.dump(inicio, fim);
-                        break;
-                        
-                    case "traceon":
-                        hw.cpu.setDebug(true);
-                        System.out.println("CPU trace ligado.");
-                        break;
-                        
-                    case "traceoff":
-                        hw.cpu.setDebug(false);
-                        System.out.println("CPU trace desligado.");
-                        break;
-                        
-                    case "meminfo":
-                        System.out.println("=== INFORMAÇÕES DE MEMÓRIA ===");
-                        System.out.println("Frames livres: " + gerenteMem.getNumFramesLivres());
-                        System.out.println("Tamanho da página: " + tamPagina);
-                        break;
-                        
-                    case "help":
-                        System.out.println("=== COMANDOS DISPONÍVEIS ===");
-                        System.out.println("new [prog]    - Cria novo processo com programa 'prog'");
-                        System.out.println("rm [id]       - Remove processo com ID 'id'");
-                        System.out.println("ps            - Lista todos os processos");
-                        System.out.println("dump [id]     - Mostra detalhes do processo 'id'");
-                        System.out.println("dumpm [ini] [fim] - Dump da memória física de 'ini' a 'fim'");
-                        System.out.println("meminfo       - Mostra informações de memória");
-                        System.out.println("traceon       - Liga trace da CPU");
-                        System.out.println("traceoff      - Desliga trace da CPU");
-                        System.out.println("exit          - Encerra o sistema");
-                        System.out.println("help          - Mostra esta ajuda");
-                        break;
-                        
-                    case "exit":
-                        System.out.println("Encerrando sistema...");
-                        scanner.close();
-                        System.exit(0);
                         break;
-                        
                     default:
-                        System.out.println("Erro: Comando '" + cmd + "' não reconhecido. Digite 'help'.");
-                        break;
+                        System.out.println("Opção desconhecida: " + args[i]);
+                        System.out.println(USO);
+                        return;
                 }
-            } catch (NumberFormatException e) {
-                System.out.println("Erro: Argumento inválido. Esperava um número.");
-            } catch (ArrayIndexOutOfBoundsException e) {
-                System.out.println("Erro: Faltam argumentos para o comando '" + cmd + "'.");
-            } catch (Exception e) {
-                System.out.println("Erro inesperado: " + e.getMessage());
-                e.printStackTrace();
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.out.println(USO);
+            return;
+        }
+        if (tamMem <= 0 || tamPg <= 0 || tamMem % tamPg != 0 || tamEspacoVirtual < 0) {
+            System.out.println("Erro: memória e página devem ser positivas, e a memória múltipla da página.");
+            return;
+        }
+        if (!modoKernel.equals("threads") && !modoKernel.equals("laco") && !modoKernel.equals("vthreads")) {
+            System.out.println("Erro: Modo de kernel desconhecido: " + modoKernel + " (threads, laco ou vthreads).");
+            return;
+        }
+        if (simulacao && !modoKernel.equals("threads")) {
+            System.out.println("Erro: -sim já roda o kernel numa thread só; não combina com -kernel " + modoKernel + ".");
+            return;
+        }
+        if (arquivoCarga != null) {
+            PrintStream saida = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream())); // Mensagens do kernel
+            try {
+                Cenario.executa(arquivoCarga, saida);
+            } catch (IOException | IllegalArgumentException e) {
+                saida.println("Erro: " + e.getMessage());
+            }
+            System.exit(0); // As threads dos sistemas dos cenários não terminam sozinhas
+        }
+        Sistema s = new Sistema(tamMem, tamPg, tamEspacoVirtual);
+        if (benchmarks) {
+            PrintStream saida = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream())); // Mensagens do kernel
+            s.new Benchmarks(saida, filtroBenchmarks).executa();
+            System.setOut(saida);
+            return;
+        }
+        if (simulacao) {
+            s.so.ativaSimulacao();
+        } else if (modoKernel.equals("laco")) {
+            s.so.ativaLaco();
+        } else if (modoKernel.equals("vthreads")) {
+            s.so.ativaThreadsPorProcesso();
+        }
+        for (String d : threadsDispositivos) {
+            String[] partes = d.split("=");
+            Dispositivo dev = partes.length == 2 && partes[1].matches("\\d+") ? s.so.dispositivo(partes[0]) : null;
+            if (dev == null || !dev.setThreads(Integer.parseInt(partes[1]))) {
+                System.out.println("Erro: Configuração de dispositivo inválida: " + d);
+                return;
+            }
+        }
+        if (quantumModo != null) {
+            s.so.quantum.configura(quantumModo.equals("ns"), quantumValor);
+        }
+        if (quantumAuto != null) {
+            s.so.quantum.setAdaptativo(quantumAuto.equals("on"));
+        }
+        if (quantumMinimo > 0) {
+            s.so.quantum.setMinimo(quantumMinimo);
+        }
+        if (arquivoEntrada != null) {
+            try {
+                s.so.entrada.abreArquivo(arquivoEntrada);
+            } catch (IOException e) {
+                System.out.println("Erro: Não foi possível abrir '" + arquivoEntrada + "'.");
+                return;
             }
         }
-    }
-
-    // ------------------- instancia e testa sistema
-    public static void main(String args[]) {
-        Sistema s = new Sistema(1024, 16);  // 1024 palavras, página de 16 palavras
-        
-        // Inicia threads do sistema
-        Thread threadEscalonador = new Thread(s.so.escalonador);
-        Thread threadCPU = new Thread(s.so.cpuThread);
-        Thread threadConsole = new Thread(s.so.console);
-        Thread threadDiscoVM = new Thread(s.so.discoVM);
         
-        threadEscalonador.start();
-        threadCPU.start();
-        threadConsole.start();
-        threadDiscoVM.start();
+        if (simulacao) {
+            System.out.println("Modo simulação: relógio virtual, " + Simulador.NS_POR_INSTRUCAO + " ns por instrução.");
+        }
+        if (portaMetricas >= 0) {
+            try {
+                s.new Metricas(portaMetricas).inicia();
+            } catch (IOException e) {
+                System.out.println("Erro: Não foi possível abrir a porta de métricas " + portaMetricas + ": " + e.getMessage());
+                return;
+            }
+        }
+        s.iniciaThreads();
+        if (lote != null) {
+            s.hw.cpu.setDebug(false); // Sem trace no lote; 'traceon' no script o liga
+            s.executaLote(lote);
+        }
         
         // Executa CLI no thread principal
         s.runCLI();
     }
 
+    // ------------------- MÉTRICAS (PROMETHEUS) -------------------
+    // Servidor HTTP embutido (-metricas porta), só em localhost, com /metrics no formato texto
+    // do Prometheus. A coleta roda na thread do servidor e só lê valores publicados sem trava
+    // (volatile e atômicos): nunca disputa monitor com a CPU ou com o kernel. As taxas por
+    // segundo são medidas no tempo do host entre uma coleta e a anterior.
+    public class Metricas {
+        private final HttpServer servidor;
+        private long coletaAnterior = System.nanoTime();
+        private long instrucoesAnteriores;
+        private long faltasAnteriores;
+
+        public Metricas(int porta) throws IOException {
+            servidor = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), 0);
+            servidor.createContext("/metrics", this::responde);
+            servidor.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "metricas");
+                t.setDaemon(true);
+                return t;
+            }));
+        }
+
+        public void inicia() {
+            servidor.start();
+            System.out.println("Métricas em http://" + servidor.getAddress().getHostString() + ":"
+                    + servidor.getAddress().getPort() + "/metrics");
+        }
+
+        private void responde(HttpExchange troca) throws IOException {
+            byte[] corpo = coleta().getBytes(StandardCharsets.UTF_8);
+            troca.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            troca.sendResponseHeaders(200, corpo.length);
+            try (OutputStream out = troca.getResponseBody()) {
+                out.write(corpo);
+            }
+        }
+
+        public synchronized String coleta() {
+            long agora = System.nanoTime();
+            long instrucoes = so.gp.instrucoesTotais;
+            long faltas = so.gp.faltasTotais;
+            double segundos = Math.max(agora - coletaAnterior, 1) / 1e9;
+            double instrucoesPorSegundo = (instrucoes - instrucoesAnteriores) / segundos;
+            double faltasPorSegundo = (faltas - faltasAnteriores) / segundos;
+            coletaAnterior = agora;
+            instrucoesAnteriores = instrucoes;
+            faltasAnteriores = faltas;
+
+            StringBuilder sb = new StringBuilder();
+            metrica(sb, "sistema_frames_livres", "gauge", "Frames de memória livres", gerenteMem.getNumFramesLivres());
+            metrica(sb, "sistema_frames", "gauge", "Frames de memória", gerenteMem.getNumFrames());
+            metrica(sb, "sistema_processos_prontos", "gauge", "Processos na fila de prontos", so.gp.prontos.tamanhoPublicado());
+            metrica(sb, "sistema_processos_bloqueados", "gauge", "Processos bloqueados", so.gp.bloqueados.tamanhoPublicado());
+            metrica(sb, "sistema_disco_pendentes", "gauge", "Pedidos do disco na fila ou em serviço", so.disco.naoConcluidos());
+            metrica(sb, "sistema_instrucoes_total", "counter", "Instruções executadas", instrucoes);
+            metrica(sb, "sistema_faltas_pagina_total", "counter", "Faltas de página (traps)", faltas);
+            metrica(sb, "sistema_instrucoes_por_segundo", "gauge", "Instruções por segundo desde a coleta anterior", instrucoesPorSegundo);
+            metrica(sb, "sistema_faltas_pagina_por_segundo", "gauge", "Faltas de página por segundo desde a coleta anterior", faltasPorSegundo);
+            return sb.toString();
+        }
+
+        private void metrica(StringBuilder sb, String nome, String tipo, String ajuda, double valor) {
+            sb.append("# HELP ").append(nome).append(' ').append(ajuda).append('\n');
+            sb.append("# TYPE ").append(nome).append(' ').append(tipo).append('\n');
+            sb.append(nome).append(' ');
+            if (valor == Math.rint(valor) && Math.abs(valor) < 1e15) {
+                sb.append((long) valor);
+            } else {
+                sb.append(String.format(Locale.ROOT, "%.3f", valor));
+            }
+            sb.append('\n');
+        }
+    }
+
     // --------------- P R O G R A M A S - não fazem parte do sistema
     public class Program {
         public String name;
@@ -1587,6 +6688,204 @@ public class Sistema {
                                 new Word(Opcode.DATA, -1, -1, -1),
                                 new Word(Opcode.DATA, -1, -1, -1)
                         }),
+                new Program("vetorHeap",
+                        new Word[] {
+                                // estende o espaço de endereçamento com sbrk e preenche a área nova
+                                // com 0, 1, 2, ... (páginas demand-zero, sem acesso ao disco)
+                                new Word(Opcode.LDI, 8, -1, 3), // sbrk
+                                new Word(Opcode.LDI, 9, -1, 128), // +128 palavras
+                                new Word(Opcode.SYSCALL, -1, -1, -1), // r8 = início da área nova
+                                new Word(Opcode.MOVE, 0, 8, -1), // r0 = endereço corrente
+                                new Word(Opcode.LDI, 1, -1, 128), // r1 = contador
+                                new Word(Opcode.LDI, 6, -1, 7), // r6 = início do loop
+                                new Word(Opcode.LDI, 2, -1, 0), // r2 = valor
+                                new Word(Opcode.STX, 0, 2, -1), // POS 7: m[r0] = r2
+                                new Word(Opcode.ADDI, 0, -1, 1),
+                                new Word(Opcode.ADDI, 2, -1, 1),
+                                new Word(Opcode.SUBI, 1, -1, 1),
+                                new Word(Opcode.JMPIG, 6, 1, -1), // volta ao loop enquanto r1 > 0
+                                new Word(Opcode.STOP, -1, -1, -1)
+                        }),
+                new Program("vetorHuge",
+                        new Word[] {
+                                // como vetorHeap, mas pede huge pages para a área nova
+                                new Word(Opcode.LDI, 8, -1, 3), // sbrk
+                                new Word(Opcode.LDI, 9, -1, 256), // +256 palavras
+                                new Word(Opcode.SYSCALL, -1, -1, -1), // r8 = início da área nova
+                                new Word(Opcode.MOVE, 0, 8, -1), // r0 = endereço corrente
+                                new Word(Opcode.MOVE, 9, 8, -1), // r9 = início da região
+                                new Word(Opcode.LDI, 7, -1, 256), // r7 = tamanho da região
+                                new Word(Opcode.LDI, 8, -1, 4), // huge
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.LDI, 1, -1, 256), // r1 = contador
+                                new Word(Opcode.LDI, 6, -1, 11), // r6 = início do loop
+                                new Word(Opcode.LDI, 2, -1, 0), // r2 = valor
+                                new Word(Opcode.STX, 0, 2, -1), // POS 11: m[r0] = r2
+                                new Word(Opcode.ADDI, 0, -1, 1),
+                                new Word(Opcode.ADDI, 2, -1, 1),
+                                new Word(Opcode.SUBI, 1, -1, 1),
+                                new Word(Opcode.JMPIG, 6, 1, -1), // volta ao loop enquanto r1 > 0
+                                new Word(Opcode.STOP, -1, -1, -1)
+                        }),
+                new Program("produtor",
+                        new Word[] {
+                                // escreve 1..10 no segmento compartilhado 1 e publica a quantidade em m[base]
+                                new Word(Opcode.LDI, 8, -1, 5), // shmget
+                                new Word(Opcode.LDI, 9, -1, 1), // chave 1
+                                new Word(Opcode.LDI, 7, -1, 16), // 16 palavras
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.LDI, 8, -1, 6), // shmat
+                                new Word(Opcode.LDI, 9, -1, 1),
+                                new Word(Opcode.SYSCALL, -1, -1, -1), // r8 = base
+                                new Word(Opcode.MOVE, 0, 8, -1), // r0 = base
+                                new Word(Opcode.MOVE, 3, 8, -1), // r3 = posição de escrita
+                                new Word(Opcode.ADDI, 3, -1, 1),
+                                new Word(Opcode.LDI, 1, -1, 10), // r1 = contador
+                                new Word(Opcode.LDI, 2, -1, 1), // r2 = valor
+                                new Word(Opcode.STX, 3, 2, -1), // POS 12: m[r3] = r2
+                                new Word(Opcode.ADDI, 3, -1, 1),
+                                new Word(Opcode.ADDI, 2, -1, 1),
+                                new Word(Opcode.SUBI, 1, -1, 1),
+                                new Word(Opcode.JMPIGK, -1, 1, 12),
+                                new Word(Opcode.LDI, 4, -1, 10),
+                                new Word(Opcode.STX, 0, 4, -1), // m[base] = 10: dados prontos
+                                new Word(Opcode.STOP, -1, -1, -1)
+                        }),
+                new Program("consumidor",
+                        new Word[] {
+                                // espera o produtor, soma os valores do segmento 1 e escreve a soma
+                                new Word(Opcode.LDI, 8, -1, 5), // shmget
+                                new Word(Opcode.LDI, 9, -1, 1), // chave 1
+                                new Word(Opcode.LDI, 7, -1, 16),
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.LDI, 8, -1, 6), // shmat
+                                new Word(Opcode.LDI, 9, -1, 1),
+                                new Word(Opcode.SYSCALL, -1, -1, -1), // r8 = base
+                                new Word(Opcode.MOVE, 0, 8, -1), // r0 = base
+                                new Word(Opcode.LDX, 1, 0, -1), // POS 8: r1 = m[base]
+                                new Word(Opcode.JMPIEK, -1, 1, 8), // espera enquanto r1 == 0
+                                new Word(Opcode.MOVE, 3, 0, -1), // r3 = posição de leitura
+                                new Word(Opcode.LDI, 2, -1, 0), // r2 = soma
+                                new Word(Opcode.ADDI, 3, -1, 1), // POS 12
+                                new Word(Opcode.LDX, 4, 3, -1),
+                                new Word(Opcode.ADD, 2, 4, -1),
+                                new Word(Opcode.SUBI, 1, -1, 1),
+                                new Word(Opcode.JMPIGK, -1, 1, 12),
+                                new Word(Opcode.ADDI, 3, -1, 1),
+                                new Word(Opcode.STX, 3, 2, -1), // m[base + 11] = soma
+                                new Word(Opcode.MOVE, 9, 3, -1),
+                                new Word(Opcode.LDI, 8, -1, 2), // escreve a soma no console
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.STOP, -1, -1, -1)
+                        }),
+                new Program("fonte",
+                        new Word[] {
+                                // envia 20, 19, ..., 1 e depois 0 (fim) para a caixa 1
+                                new Word(Opcode.LDI, 7, -1, 15), // r7 = buffer (POS 15)
+                                new Word(Opcode.LDI, 6, -1, 1), // r6 = 1 palavra
+                                new Word(Opcode.LDI, 9, -1, 1), // r9 = caixa 1
+                                new Word(Opcode.LDI, 0, -1, 20), // r0 = valor
+                                new Word(Opcode.STD, 0, -1, 15), // POS 4: buffer = r0
+                                new Word(Opcode.LDI, 8, -1, 8), // POS 5: send
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.JMPILK, -1, 8, 5), // caixa cheia: tenta de novo
+                                new Word(Opcode.SUBI, 0, -1, 1),
+                                new Word(Opcode.JMPIGK, -1, 0, 4),
+                                new Word(Opcode.STD, 0, -1, 15), // buffer = 0 (fim)
+                                new Word(Opcode.LDI, 8, -1, 8), // POS 11: send
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.JMPILK, -1, 8, 11),
+                                new Word(Opcode.STOP, -1, -1, -1),
+                                new Word(Opcode.DATA, -1, -1, -1) // POS 15: buffer
+                        }),
+                new Program("dobra",
+                        new Word[] {
+                                // recebe da caixa 1, dobra e repassa para a caixa 2 até receber 0
+                                new Word(Opcode.LDI, 7, -1, 14), // r7 = buffer (POS 14)
+                                new Word(Opcode.LDI, 6, -1, 1),
+                                new Word(Opcode.LDI, 9, -1, 1), // POS 2: receive da caixa 1
+                                new Word(Opcode.LDI, 8, -1, 9),
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.LDD, 0, -1, 14), // r0 = valor
+                                new Word(Opcode.ADD, 0, 0, -1), // r0 = 2 * r0
+                                new Word(Opcode.STD, 0, -1, 14),
+                                new Word(Opcode.LDI, 9, -1, 2), // POS 8: send para a caixa 2
+                                new Word(Opcode.LDI, 8, -1, 8),
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.JMPILK, -1, 8, 8), // caixa cheia: tenta de novo
+                                new Word(Opcode.JMPIGK, -1, 0, 2), // continua enquanto valor > 0
+                                new Word(Opcode.STOP, -1, -1, -1),
+                                new Word(Opcode.DATA, -1, -1, -1) // POS 14: buffer
+                        }),
+                new Program("soma",
+                        new Word[] {
+                                // soma o que chega na caixa 2 até receber 0 e escreve o total
+                                new Word(Opcode.LDI, 7, -1, 14), // r7 = buffer (POS 14)
+                                new Word(Opcode.LDI, 6, -1, 1),
+                                new Word(Opcode.LDI, 1, -1, 0), // r1 = soma
+                                new Word(Opcode.LDI, 9, -1, 2), // POS 3: receive da caixa 2
+                                new Word(Opcode.LDI, 8, -1, 9),
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.LDD, 0, -1, 14),
+                                new Word(Opcode.ADD, 1, 0, -1),
+                                new Word(Opcode.JMPIGK, -1, 0, 3), // continua enquanto valor > 0
+                                new Word(Opcode.STD, 1, -1, 14),
+                                new Word(Opcode.LDI, 9, -1, 14), // escreve a soma no console
+                                new Word(Opcode.LDI, 8, -1, 2),
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.STOP, -1, -1, -1),
+                                new Word(Opcode.DATA, -1, -1, -1) // POS 14: buffer
+                        }),
+                new Program("dorminhoco",
+                        new Word[] {
+                                // dorme 20 ticks e escreve o contador, 3 vezes
+                                new Word(Opcode.LDI, 0, -1, 3), // r0 = contador
+                                new Word(Opcode.LDI, 8, -1, 10), // POS 1: sleep
+                                new Word(Opcode.LDI, 9, -1, 20), // 20 ticks
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.STD, 0, -1, 11),
+                                new Word(Opcode.LDI, 9, -1, 11), // escreve o contador
+                                new Word(Opcode.LDI, 8, -1, 2),
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.SUBI, 0, -1, 1),
+                                new Word(Opcode.JMPIGK, -1, 0, 1),
+                                new Word(Opcode.STOP, -1, -1, -1),
+                                new Word(Opcode.DATA, -1, -1, -1) // POS 11
+                        }),
+                new Program("imprimeVetor",
+                        new Word[] {
+                                // escreve os 10 quadrados abaixo com uma única chamada writev
+                                new Word(Opcode.LDI, 9, -1, 5), // r9 = início do vetor (POS 5)
+                                new Word(Opcode.LDI, 7, -1, 10), // r7 = 10 palavras
+                                new Word(Opcode.LDI, 8, -1, 12), // writev
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.STOP, -1, -1, -1),
+                                new Word(Opcode.DATA, -1, -1, 1), // POS 5
+                                new Word(Opcode.DATA, -1, -1, 4),
+                                new Word(Opcode.DATA, -1, -1, 9),
+                                new Word(Opcode.DATA, -1, -1, 16),
+                                new Word(Opcode.DATA, -1, -1, 25),
+                                new Word(Opcode.DATA, -1, -1, 36),
+                                new Word(Opcode.DATA, -1, -1, 49),
+                                new Word(Opcode.DATA, -1, -1, 64),
+                                new Word(Opcode.DATA, -1, -1, 81),
+                                new Word(Opcode.DATA, -1, -1, 100)
+                        }),
+                new Program("leVetor",
+                        new Word[] {
+                                // lê 3 inteiros com readv e os escreve de volta com writev
+                                new Word(Opcode.LDI, 9, -1, 8), // r9 = buffer (POS 8)
+                                new Word(Opcode.LDI, 7, -1, 3), // r7 = 3 palavras
+                                new Word(Opcode.LDI, 8, -1, 11), // readv
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.LDI, 7, -1, 3),
+                                new Word(Opcode.LDI, 8, -1, 12), // writev
+                                new Word(Opcode.SYSCALL, -1, -1, -1),
+                                new Word(Opcode.STOP, -1, -1, -1),
+                                new Word(Opcode.DATA, -1, -1, -1), // POS 8
+                                new Word(Opcode.DATA, -1, -1, -1),
+                                new Word(Opcode.DATA, -1, -1, -1)
+                        }),
                 new Program("PB",
                         new Word[] {
                                 // dado um inteiro em alguma posição de memória,
@@ -0,0 +1,136 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Benchmarks JMH das partes quentes do Sistema: o laço da CPU (run_one_instruction) em cada
+// programa, a tradução de endereços, o gerente de memória e a cópia de página. São as mesmas
+// medidas do -bench (Sistema.Benchmarks), preparadas lá e obtidas por Sistema.medidaBenchmark;
+// o JMH só cronometra. Sistema está no pacote padrão, que não se importa, daí a reflexão.
+// Trace desligado e System.out descartado: nenhuma mensagem do kernel entra na medida.
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SistemaBenchmark {
+    static final int MEM = 1024;
+    static final int PAG = 16;
+    static final int LOTE = 1024; // Operações por chamada, para diluir o custo da chamada
+
+    // Medida preparada e saída do kernel descartada durante o trial
+    public abstract static class Medida {
+        IntToLongFunction op;
+        private PrintStream saida;
+
+        void prepara(String nome, String parametro) throws ReflectiveOperationException {
+            saida = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            op = (IntToLongFunction) Class.forName("Sistema")
+                    .getMethod("medidaBenchmark", int.class, int.class, String.class, String.class)
+                    .invoke(null, MEM, PAG, nome, parametro);
+            if (op == null) {
+                throw new IllegalStateException("medida inexistente: " + nome + " " + parametro);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void restaura() {
+            System.setOut(saida);
+        }
+    }
+
+    // Programas que não começam chamando o kernel (todos os de Programs hoje)
+    @State(Scope.Thread)
+    public static class Passo extends Medida {
+        @Param({"fatorial", "fatorialV2", "progMinimo", "fibonacci10", "fibonacci10v2", "fibonacciREAD",
+                "vetorHeap", "vetorHuge", "produtor", "consumidor", "fonte", "dobra", "soma", "dorminhoco",
+                "imprimeVetor", "leVetor", "PB", "PC"})
+        String programa;
+
+        @Setup(Level.Trial)
+        public void setup() throws ReflectiveOperationException {
+            prepara("passo", programa);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Traducao extends Medida {
+        @Param({"comum", "huge"})
+        String paginas;
+
+        @Setup(Level.Trial)
+        public void setup() throws ReflectiveOperationException {
+            prepara("translate", paginas);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class AlocaLibera extends Medida {
+        @Param({"64", "1024", "16384"})
+        String frames;
+
+        @Setup(Level.Trial)
+        public void setup() throws ReflectiveOperationException {
+            prepara("alocaFrame+liberaFrame", frames);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Vitima extends Medida {
+        @Param({"64", "1024", "16384"})
+        String frames;
+
+        @Setup(Level.Trial)
+        public void setup() throws ReflectiveOperationException {
+            prepara("escolheVitima", frames);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Carga extends Medida {
+        @Setup(Level.Trial)
+        public void setup() throws ReflectiveOperationException {
+            prepara("cargaPagina", "" + PAG);
+        }
+    }
+
+    // Uma instrução: run_one_instruction com o programa inteiro na memória
+    @Benchmark
+    @OperationsPerInvocation(LOTE)
+    public long passo(Passo m) {
+        return m.op.applyAsLong(LOTE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOTE)
+    public long translate(Traducao m) {
+        return m.op.applyAsLong(LOTE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOTE)
+    public long alocaFrameLiberaFrame(AlocaLibera m) {
+        return m.op.applyAsLong(LOTE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOTE)
+    public long escolheVitima(Vitima m) {
+        return m.op.applyAsLong(LOTE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOTE)
+    public long cargaPagina(Carga m) {
+        return m.op.applyAsLong(LOTE);
+    }
+}